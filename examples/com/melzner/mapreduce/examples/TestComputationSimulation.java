@@ -6,7 +6,7 @@ import com.melzner.mapreduce.computation.SimpleComputation.MapTaskState;
 import com.melzner.mapreduce.scenario.Scenario;
 import com.melzner.mapreduce.scenario.ScenarioConfig;
 import com.melzner.mapreduce.scenario.SimpleComputationConfig;
-import com.melzner.mapreduce.simulation.RecordHistoryEntry;
+import com.melzner.mapreduce.simulation.Record;
 import com.melzner.mapreduce.simulation.Simulation;
 import com.melzner.mapreduce.simulation.SimulationResult;
 import com.melzner.mapreduce.visualizer.Graph;
@@ -16,32 +16,24 @@ import java.awt.*;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
 
 import static com.melzner.mapreduce.computation.SimpleComputation.ReduceTaskState;
 
 public abstract class TestComputationSimulation {
     protected static final String SCENARIOS_PATH = "/com/melzner/mapreduce/examples/scenarios";
 
-    protected static final Function<RecordHistoryEntry, double[]> INT_ENTRY_TO_POINT_TRANSFORMATION = entry -> new double[]{entry.getTimestamp(), (Integer) entry.getValue()};
-
     protected static void simulate(String name, ScenarioConfig config) {
         simulate(name, config, new ExecutionModification() {
         });
     }
 
     protected static void simulate(String name, ScenarioConfig config, ExecutionModification modification) {
-        Function<RecordHistoryEntry, double[]> transformation = INT_ENTRY_TO_POINT_TRANSFORMATION;
-
         System.out.println("starting simulation '" + name + "'");
         SimulationResult result = new Scenario(config).simulate();
 
         long timestampFinished = result.getDuration();
 
-        Map<Object, List<RecordHistoryEntry>> record = result.getRecordHistory();
-
         Color colorIdle = new Color(250, 30, 30);
         Color colorInProgress = new Color(255, 255, 30);
         Color colorDone = new Color(30, 255, 30);
@@ -66,7 +58,7 @@ public abstract class TestComputationSimulation {
             totalOutput += sC.outputSplitSize.get();
         }
         for (int i = 0; i < states.size(); i++) {
-            graphs[i] = Graph.create(record.get(states.get(i)), transformation);
+            graphs[i] = Graph.create(result.getRecord(states.get(i)));
         }
 
         Simulation.newVisualizer(name + ": Task Status")
@@ -74,19 +66,19 @@ public abstract class TestComputationSimulation {
                 .addStackedGraphs(graphs, colors)
                 .addHorizontalLine(totalOutput, Color.BLACK)
                 .show();
-        Graph runningMachines = Graph.create(record.get(Machine.RecordType.RUNNING_MACHINES), transformation);
+        Graph runningMachines = Graph.create(result.getRecord(Machine.RecordType.RUNNING_MACHINES));
 
         GraphVisualizer runningMachinesVisualizer = Simulation.newVisualizer(name + ": Running Machines")
                 .addVerticalLine(timestampFinished, Color.GRAY)
                 .setYLabel("busy")
-                .addGraph(Graph.create(record.get(Machine.RecordType.ACTIVE_MACHINES), transformation), Color.RED)
+                .addGraph(Graph.create(result.getRecord(Machine.RecordType.ACTIVE_MACHINES)), Color.RED)
                 .addGraph(runningMachines, Color.BLACK);
 
         modification.modifyRunningMachinesVisualizer(runningMachinesVisualizer, result);
         runningMachinesVisualizer.show();
 
-        long tMappingDone = (long) record.get(SimpleComputation.RecordType.MAPPING_DONE).get(0).getTimestamp();
-        long tShuffleDone = (long) record.get(SimpleComputation.RecordType.SHUFFLE_DONE).get(0).getTimestamp();
+        long tMappingDone = result.getRecord(SimpleComputation.RecordType.MAPPING_DONE).getTimestamp(0);
+        long tShuffleDone = result.getRecord(SimpleComputation.RecordType.SHUFFLE_DONE).getTimestamp(0);
 
         System.out.println("Computation duration: " + TimeUnit.NANOSECONDS.toMillis(result.getDuration()) / 1000.0 + " s");
         System.out.println("Integrated RunningMachines graph: " + TimeUnit.NANOSECONDS.toSeconds((long) runningMachines.calculateArea()) + " machines*s");
@@ -97,8 +89,8 @@ public abstract class TestComputationSimulation {
         System.out.println("Shuffle Phase took " + TimeUnit.NANOSECONDS.toMillis(tShuffleDone - tMappingDone) / 1000.0 + " s");
 
 
-        List<RecordHistoryEntry> activeMachines = record.get(Machine.RecordType.ACTIVE_MACHINES);
-        System.out.println("Machines at end of simulation: " + activeMachines.get(activeMachines.size() - 1).getValue());
+        Record activeMachines = result.getRecord(Machine.RecordType.ACTIVE_MACHINES);
+        System.out.println("Machines at end of simulation: " + activeMachines.getValue(activeMachines.size() - 1));
 
     }
 
@@ -0,0 +1,39 @@
+package com.melzner.mapreduce.examples.benchmark;
+
+import com.melzner.mapreduce.cluster.BlockPlacementPolicyType;
+import com.melzner.mapreduce.cluster.Cluster;
+import com.melzner.mapreduce.cluster.Machine;
+import com.melzner.mapreduce.scenario.ClusterConfig;
+
+/** Measures the cost of placing 10k block files on 10k machines with every placement policy. */
+public class BlockPlacementBenchmark {
+
+    private static final int MACHINES = 10_000;
+    private static final int BLOCKS = 10_000;
+    private static final int FILES = 10;
+    private static final long BLOCK_SIZE = 64L * 1024 * 1024;
+
+    public static void main(String[] args) {
+        for (BlockPlacementPolicyType policy : BlockPlacementPolicyType.values()) {
+            ClusterConfig config = new ClusterConfig();
+            config.machineCount.set(MACHINES);
+            config.dfsBlockSize.set(BLOCK_SIZE);
+            config.dfsBlockPlacement.set(policy);
+            Cluster cluster = new Cluster(config, 0);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < FILES; i++) {
+                cluster.getDFS().writeFile(BLOCKS * BLOCK_SIZE);
+            }
+            long nanos = System.nanoTime() - start;
+
+            long fewest = Long.MAX_VALUE, most = 0;
+            for (Machine machine : cluster.getMachines()) {
+                fewest = Math.min(fewest, machine.getHardDrive().getUsage() / BLOCK_SIZE);
+                most = Math.max(most, machine.getHardDrive().getUsage() / BLOCK_SIZE);
+            }
+            System.out.println(policy + ": " + nanos / FILES / 1_000_000.0 + " ms per file, " + fewest + " to "
+                    + most + " replicas per machine");
+        }
+    }
+}
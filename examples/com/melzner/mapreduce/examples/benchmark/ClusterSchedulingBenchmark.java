@@ -0,0 +1,95 @@
+package com.melzner.mapreduce.examples.benchmark;
+
+import com.melzner.mapreduce.cluster.Cluster;
+import com.melzner.mapreduce.cluster.Machine;
+import com.melzner.mapreduce.computation.MapReduceExecutionOrder;
+import com.melzner.mapreduce.scenario.ClusterConfig;
+import com.melzner.mapreduce.simulation.Simulatable;
+import com.melzner.mapreduce.simulation.Simulation;
+import com.melzner.mapreduce.simulation.SimulationEvent;
+import com.melzner.mapreduce.simulation.SimulationEventType;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/** Compares the free machine index of the cluster with a scan of all machines, both must pick the same machines. */
+public class ClusterSchedulingBenchmark {
+
+    private static final int MACHINES = 1800;
+    private static final int TASKS = 200_000;
+    private static final long NETWORK_DELAY = 1_000_000;
+    private static final double MEAN_TASK_DURATION = 50_000_000;
+
+    public static void main(String[] args) {
+        ClusterConfig config = new ClusterConfig();
+        config.machineCount.set(MACHINES);
+        config.machineFailProbability.set(0.0);
+        Cluster cluster = new Cluster(config);
+        TaskSource source = new TaskSource(cluster);
+        Simulation simulation = new Simulation().setSeed(0);
+        simulation.add(cluster);
+        simulation.add(source);
+        simulation.run();
+
+        System.out.println(source.started + " tasks on " + MACHINES + " machines");
+        System.out.println("free machine index: " + source.indexNanos / (double) source.started + " ns/task");
+        System.out.println("scan of all machines: " + source.scanNanos / (double) source.started + " ns/task");
+    }
+
+    private static class TaskSource extends Simulatable<TaskSource.EventType> {
+
+        private final Cluster cluster;
+        private final Set<Machine> pendingMachines = new HashSet<>();
+        private int started;
+        private long indexNanos, scanNanos;
+
+        private TaskSource(Cluster cluster) {
+            super(MapReduceExecutionOrder.COMPUTATION);
+            this.cluster = cluster;
+            cluster.addListener(Cluster.ClusterEventType.BUSY_STATE_CHANGED, e -> {
+                if (! e.machine.isBusy()) {
+                    invokeEvent(0, new SimulationEvent<>(EventType.MACHINE_FREE));
+                }
+            });
+        }
+
+        @Override
+        protected void startSimulation() {
+            invokeEvent(0, new SimulationEvent<>(EventType.MACHINE_FREE));
+        }
+
+        @Override
+        protected void onSimulationEvent(SimulationEvent<EventType> event) {
+            while (started < TASKS) {
+                long tStart = System.nanoTime();
+                Machine machine = cluster.getFreeMachine(m -> ! pendingMachines.contains(m));
+                long tIndex = System.nanoTime();
+                Machine scanned = scan();
+                scanNanos += System.nanoTime() - tIndex;
+                indexNanos += tIndex - tStart;
+                if (machine != scanned) {
+                    throw new IllegalStateException("index picked " + machine + " instead of " + scanned);
+                } else if (machine == null) {
+                    return;
+                }
+                pendingMachines.add(machine);
+                started++;
+                double duration = - Math.log(1 - getRandom().nextDouble()) * MEAN_TASK_DURATION;
+                machine.startTask(NETWORK_DELAY, duration, t -> pendingMachines.remove(t.getMachine()), () -> { });
+            }
+        }
+
+        private Machine scan() {
+            for (Machine machine : cluster.getMachines()) {
+                if (! machine.isBusy() && machine.isAlive() && ! pendingMachines.contains(machine)) {
+                    return machine;
+                }
+            }
+            return null;
+        }
+
+        private enum EventType implements SimulationEventType {
+            MACHINE_FREE
+        }
+    }
+}
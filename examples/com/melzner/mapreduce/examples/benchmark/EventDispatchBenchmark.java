@@ -0,0 +1,65 @@
+package com.melzner.mapreduce.examples.benchmark;
+
+import com.melzner.mapreduce.simulation.*;
+
+import java.lang.management.ManagementFactory;
+
+/** Measures allocated bytes per dispatched event in steady state, after a warm-up phase. */
+public class EventDispatchBenchmark {
+
+    private static final int SIMULATABLES = 1000;
+    private static final long WARMUP_EVENTS = 1_000_000;
+    private static final long MEASURED_EVENTS = 10_000_000;
+
+    private static long dispatchedEvents;
+    private static long allocatedBytesStart, allocatedBytesEnd;
+
+    public static void main(String[] args) {
+        for (EventSchedulerType schedulerType : EventSchedulerType.values()) {
+            dispatchedEvents = 0;
+            Simulation simulation = new Simulation().setSeed(0).setEventSchedulerType(schedulerType);
+            for (int i = 0; i < SIMULATABLES; i++) {
+                simulation.add(new Emitter());
+            }
+            long tStart = System.nanoTime();
+            simulation.run();
+            long duration = System.nanoTime() - tStart;
+
+            System.out.println(schedulerType + ": " + (allocatedBytesEnd - allocatedBytesStart) / (double) MEASURED_EVENTS
+                    + " bytes/event, " + duration / (double) dispatchedEvents + " ns/event");
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static class Emitter extends Simulatable<Emitter.EventType> {
+
+        private final SimulationEventPool<SimulationEvent<EventType>> events =
+                new SimulationEventPool<>(() -> new SimulationEvent<>(EventType.EMIT));
+
+        @Override
+        protected void startSimulation() {
+            invokeEvent(getRandom().nextLong(1000), events.obtain());
+        }
+
+        @Override
+        protected void onSimulationEvent(SimulationEvent<EventType> event) {
+            dispatchedEvents++;
+            if (dispatchedEvents == WARMUP_EVENTS) {
+                allocatedBytesStart = allocatedBytes();
+            } else if (dispatchedEvents == WARMUP_EVENTS + MEASURED_EVENTS) {
+                allocatedBytesEnd = allocatedBytes();
+            }
+            if (dispatchedEvents < WARMUP_EVENTS + MEASURED_EVENTS) {
+                invokeEvent(getRandom().nextLong(1000), events.obtain());
+            }
+        }
+
+        private enum EventType implements SimulationEventType {
+            EMIT
+        }
+    }
+}
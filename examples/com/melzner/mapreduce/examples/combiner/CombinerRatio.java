@@ -0,0 +1,38 @@
+package com.melzner.mapreduce.examples.combiner;
+
+import com.melzner.mapreduce.computation.SimpleComputation;
+import com.melzner.mapreduce.examples.TestComputationSimulation;
+import com.melzner.mapreduce.scenario.Scenario;
+import com.melzner.mapreduce.scenario.ScenarioConfig;
+import com.melzner.mapreduce.scenario.SimpleComputationConfig;
+import com.melzner.mapreduce.simulation.Record;
+import com.melzner.mapreduce.simulation.SimulationResult;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** Sweeps the fraction of the map output a combiner leaves. */
+public class CombinerRatio extends TestComputationSimulation {
+
+    private static final double[] RATIOS = {1, 0.5, 0.2, 0.05};
+
+    public static void main(String[] args) throws IOException, SAXException {
+        for (double ratio : RATIOS) {
+            ScenarioConfig config = ScenarioConfig.load(CombinerRatio.class, SCENARIOS_PATH + "/simpleSimulation.xml");
+            config.clusterConfig.dfsBlockSize.set(64L * 1024 * 1024);
+            for (SimpleComputationConfig computation : config.simpleComputations) {
+                computation.combinerRatio.set(ratio);
+            }
+            SimulationResult result = new Scenario(config).simulate();
+            long shuffleDone = result.getRecord(SimpleComputation.RecordType.SHUFFLE_DONE).getTimestamp(0);
+            Record outputBytes = result.getRecord(
+                    SimpleComputation.jobRecordKey(SimpleComputation.JobRecordType.MAP_OUTPUT_BYTES, "computation1"));
+            long outputMegabytes = (long) outputBytes.getDouble(outputBytes.size() - 1) / (1024 * 1024);
+
+            System.out.println("combiner ratio " + ratio + ": map output " + outputMegabytes + " MB"
+                    + ", shuffle done " + TimeUnit.NANOSECONDS.toMillis(shuffleDone) / 1000.0 + " s"
+                    + ", duration " + TimeUnit.NANOSECONDS.toMillis(result.getDuration()) / 1000.0 + " s");
+        }
+    }
+}
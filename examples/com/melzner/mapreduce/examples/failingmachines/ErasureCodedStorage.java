@@ -0,0 +1,47 @@
+package com.melzner.mapreduce.examples.failingmachines;
+
+import com.melzner.mapreduce.cluster.DFS;
+import com.melzner.mapreduce.cluster.ErasureCoding;
+import com.melzner.mapreduce.examples.TestComputationSimulation;
+import com.melzner.mapreduce.scenario.Scenario;
+import com.melzner.mapreduce.scenario.ScenarioConfig;
+import com.melzner.mapreduce.simulation.Record;
+import com.melzner.mapreduce.simulation.SimulationResult;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Runs the failing machines scenario with 64 MB blocks, replicated and with every erasure code. */
+public class ErasureCodedStorage extends TestComputationSimulation {
+
+    private static final long MB = 1024 * 1024;
+
+    public static void main(String[] args) throws IOException, SAXException {
+        long seed = ThreadLocalRandom.current().nextLong();
+        for (ErasureCoding coding : ErasureCoding.values()) {
+            ScenarioConfig config = ScenarioConfig.load(ErasureCodedStorage.class, SCENARIOS_PATH + "/failingMachines.xml");
+            config.simulationConfig.seed.set(seed);
+            config.clusterConfig.dfsBlockSize.set(64 * MB);
+            config.clusterConfig.dfsErasureCoding.set(coding);
+            config.clusterConfig.reReplicationStreams.set(2);
+            SimulationResult result = new Scenario(config).simulate();
+
+            System.out.println(coding + ": " + getFirst(result, DFS.RecordType.STORED_BYTES) / MB + " MB stored, "
+                    + getLast(result, DFS.RecordType.RE_REPLICATED_BYTES) / MB + " MB re-replicated, "
+                    + getLast(result, DFS.RecordType.DEGRADED_READS) + " degraded reads, duration "
+                    + TimeUnit.NANOSECONDS.toMillis(result.getDuration()) / 1000.0 + " s");
+        }
+    }
+
+    private static long getFirst(SimulationResult result, Object key) {
+        Record record = result.getRecord(key);
+        return record == null || record.size() == 0 ? 0 : (long) record.getDouble(0);
+    }
+
+    private static long getLast(SimulationResult result, Object key) {
+        Record record = result.getRecord(key);
+        return record == null || record.size() == 0 ? 0 : (long) record.getDouble(record.size() - 1);
+    }
+}
@@ -0,0 +1,63 @@
+package com.melzner.mapreduce.examples.failingmachines;
+
+import com.melzner.mapreduce.cluster.DFS;
+import com.melzner.mapreduce.examples.TestComputationSimulation;
+import com.melzner.mapreduce.scenario.Scenario;
+import com.melzner.mapreduce.scenario.ScenarioConfig;
+import com.melzner.mapreduce.simulation.Record;
+import com.melzner.mapreduce.simulation.SimulationResult;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Runs the failing machines scenario with 64 MB blocks under a sweep of per machine re-replication throttles. */
+public class ReReplicationThrottle extends TestComputationSimulation {
+
+    /** bytes per second a machine sends re-replicating, 0 for the network limit only */
+    private static final long[] BANDWIDTHS = {0, 50L * 1024 * 1024, 10L * 1024 * 1024, 2L * 1024 * 1024};
+
+    public static void main(String[] args) throws IOException, SAXException {
+        long seed = ThreadLocalRandom.current().nextLong();
+        simulate(seed, 0, 0);
+        for (long bandwidth : BANDWIDTHS) {
+            simulate(seed, 2, bandwidth);
+        }
+    }
+
+    private static void simulate(long seed, int streams, long bandwidth) throws IOException, SAXException {
+        ScenarioConfig config = ScenarioConfig.load(ReReplicationThrottle.class, SCENARIOS_PATH + "/failingMachines.xml");
+        config.simulationConfig.seed.set(seed);
+        config.clusterConfig.dfsBlockSize.set(64L * 1024 * 1024);
+        config.clusterConfig.reReplicationStreams.set(streams);
+        config.clusterConfig.reReplicationBandwidth.set(bandwidth);
+        SimulationResult result = new Scenario(config).simulate();
+
+        String mode = streams == 0 ? "instant" : bandwidth == 0 ? "unthrottled"
+                : bandwidth / (1024 * 1024) + " MB/s per machine";
+        StringBuilder line = new StringBuilder(mode).append(":");
+        if (streams > 0) {
+            line.append(" re-replicated ").append(getLast(result, DFS.RecordType.RE_REPLICATED_BYTES) / (1024 * 1024))
+                    .append(" MB, at most ").append(getMaximum(result, DFS.RecordType.UNDER_REPLICATED_BLOCKS))
+                    .append(" blocks under-replicated, ").append(getLast(result, DFS.RecordType.LOST_BLOCKS))
+                    .append(" blocks lost,");
+        }
+        System.out.println(line.append(" duration ")
+                .append(TimeUnit.NANOSECONDS.toMillis(result.getDuration()) / 1000.0).append(" s"));
+    }
+
+    private static long getLast(SimulationResult result, Object key) {
+        Record record = result.getRecord(key);
+        return record == null || record.size() == 0 ? 0 : (long) record.getDouble(record.size() - 1);
+    }
+
+    private static long getMaximum(SimulationResult result, Object key) {
+        Record record = result.getRecord(key);
+        double maximum = 0;
+        for (int i = 0; record != null && i < record.size(); i++) {
+            maximum = Math.max(maximum, record.getDouble(i));
+        }
+        return (long) maximum;
+    }
+}
@@ -0,0 +1,41 @@
+package com.melzner.mapreduce.examples.jobgraph;
+
+import com.melzner.mapreduce.computation.SimpleComputation;
+import com.melzner.mapreduce.examples.TestComputationSimulation;
+import com.melzner.mapreduce.scenario.Scenario;
+import com.melzner.mapreduce.scenario.ScenarioConfig;
+import com.melzner.mapreduce.scenario.SimpleComputationConfig;
+import com.melzner.mapreduce.simulation.SimulationResult;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Runs a job graph of four stages once with each stage waiting for its inputs and once pipelined. */
+public class PipelinedStages extends TestComputationSimulation {
+
+    public static void main(String[] args) throws IOException, SAXException {
+        long seed = ThreadLocalRandom.current().nextLong();
+        for (boolean pipelined : new boolean[]{false, true}) {
+            ScenarioConfig config = ScenarioConfig.load(PipelinedStages.class, SCENARIOS_PATH + "/jobGraph.xml");
+            config.simulationConfig.seed.set(seed);
+            for (SimpleComputationConfig computation : config.simpleComputations) {
+                computation.pipelined.set(pipelined);
+            }
+            SimulationResult result = new Scenario(config).simulate();
+
+            System.out.println(pipelined ? "pipelined:" : "back-to-back:");
+            for (SimpleComputationConfig computation : config.simpleComputations) {
+                String name = computation.name.get();
+                long start = result.getRecord(
+                        SimpleComputation.jobRecordKey(SimpleComputation.JobRecordType.WAIT, name)).getTimestamp(0);
+                long end = result.getRecord(
+                        SimpleComputation.jobRecordKey(SimpleComputation.JobRecordType.MAKESPAN, name)).getTimestamp(0);
+                System.out.println("    " + name + ": first task " + TimeUnit.NANOSECONDS.toMillis(start) / 1000.0
+                        + " s, last task done " + TimeUnit.NANOSECONDS.toMillis(end) / 1000.0 + " s");
+            }
+            System.out.println("    duration " + TimeUnit.NANOSECONDS.toMillis(result.getDuration()) / 1000.0 + " s");
+        }
+    }
+}
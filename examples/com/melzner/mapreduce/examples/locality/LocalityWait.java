@@ -0,0 +1,40 @@
+package com.melzner.mapreduce.examples.locality;
+
+import com.melzner.mapreduce.cluster.Locality;
+import com.melzner.mapreduce.computation.SimpleComputation;
+import com.melzner.mapreduce.examples.TestComputationSimulation;
+import com.melzner.mapreduce.scenario.Scenario;
+import com.melzner.mapreduce.scenario.ScenarioConfig;
+import com.melzner.mapreduce.scenario.SimpleComputationConfig;
+import com.melzner.mapreduce.simulation.Record;
+import com.melzner.mapreduce.simulation.SimulationResult;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** Sweeps the locality wait of delay scheduling. */
+public class LocalityWait extends TestComputationSimulation {
+
+    private static final long[] WAITS_MS = {0, 100, 250, 500, 1000, 2000, 3000, 5000, 10000};
+
+    public static void main(String[] args) throws IOException, SAXException {
+        for (long waitMs : WAITS_MS) {
+            ScenarioConfig config = ScenarioConfig.load(LocalityWait.class, SCENARIOS_PATH + "/failingMachines.xml");
+            for (SimpleComputationConfig computation : config.simpleComputations) {
+                computation.nodeLocalityWait.set(TimeUnit.MILLISECONDS.toNanos(waitMs));
+                computation.rackLocalityWait.set(TimeUnit.MILLISECONDS.toNanos(waitMs));
+            }
+            SimulationResult result = new Scenario(config).simulate();
+            long mappingDone = result.getRecord(SimpleComputation.RecordType.MAPPING_DONE).getTimestamp(0);
+
+            StringBuilder line = new StringBuilder("wait " + waitMs + " ms: map phase "
+                    + TimeUnit.NANOSECONDS.toMillis(mappingDone) + " ms");
+            for (Locality locality : Locality.values()) {
+                Record record = result.getRecord(locality);
+                line.append(", ").append(locality).append(' ').append(record == null ? 0 : record.getValue(record.size() - 1));
+            }
+            System.out.println(line);
+        }
+    }
+}
@@ -2,33 +2,46 @@ package com.melzner.mapreduce.examples.multipletasks;
 
 import com.melzner.mapreduce.examples.singletask.SingleTaskExample;
 import com.melzner.mapreduce.simulation.Simulation;
+import com.melzner.xmlutil.XMLValue;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.concurrent.TimeUnit;
 
 public class MultipleTasksExample extends SingleTaskExample {
 
-    private static final Random random = new Random();
-
     public static void main(String[] args) {
-        Simulation simulation = new Simulation();
+        Simulation simulation = new Simulation().setSeed(42);
 
         for (int i = 0; i < 1000; i++) {
-            simulation.add(new Machine(
-                    (long) (TimeUnit.SECONDS.toNanos(1) * gaussianBetween(1, 3, 0, 4)),
-                    (long) (TimeUnit.SECONDS.toNanos(1) * gaussianBetween(6, 9, 5, 8))
-            ));
+            simulation.add(new RandomMachine());
         }
 
         runBusyMachineSimulation(simulation);
     }
 
-    public static double gaussianBetween(double min, double max) {
-        return gaussianBetween(min, max, min, max);
+    public static double gaussianBetween(SplittableRandom random, double min, double max) {
+        return gaussianBetween(random, min, max, min, max);
     }
 
-    public static double gaussianBetween(double min, double max, double clipMin, double clipMax) {
-        double d = (random.nextGaussian() / 4 + 0.5);
+    public static double gaussianBetween(SplittableRandom random, double min, double max, double clipMin, double clipMax) {
+        double d = (XMLValue.nextGaussian(random) / 4 + 0.5);
         return Math.max(clipMin, Math.min(min + d * (max - min), clipMax));
     }
+
+    private static class RandomMachine extends Machine {
+
+        RandomMachine() {
+            super(0, 0);
+        }
+
+        @Override
+        protected long getStart() {
+            return (long) (TimeUnit.SECONDS.toNanos(1) * gaussianBetween(getRandom(), 1, 3, 0, 4));
+        }
+
+        @Override
+        protected long getDuration() {
+            return (long) (TimeUnit.SECONDS.toNanos(1) * gaussianBetween(getRandom(), 6, 9, 5, 8));
+        }
+    }
 }
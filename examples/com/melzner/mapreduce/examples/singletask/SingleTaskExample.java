@@ -22,8 +22,7 @@ public class SingleTaskExample {
     protected static void runBusyMachineSimulation(Simulation simulation) {
         SimulationResult result = simulation.run();
 
-        Graph graph = Graph.create(result.getRecordHistory().get(RecordType.BUSY_MACHINES),
-                entry -> new double[]{entry.getTimestamp(), (Integer) entry.getValue()});
+        Graph graph = Graph.create(result.getRecord(RecordType.BUSY_MACHINES));
 
         Simulation.newVisualizer("Single Task Example")
                 .addGraph(graph)
@@ -41,21 +40,29 @@ public class SingleTaskExample {
             this.duration = duration;
         }
 
+        protected long getStart() {
+            return start;
+        }
+
+        protected long getDuration() {
+            return duration;
+        }
+
         @Override
         protected void startSimulation() {
-            invokeEvent(start, new SimulationEvent<>(MachineEvent.START_TASK));
-            updateRecordValue(RecordType.BUSY_MACHINES, i -> 0, 0);
+            invokeEvent(getStart(), new SimulationEvent<>(MachineEvent.START_TASK));
+            getIntRecord(RecordType.BUSY_MACHINES).set(0);
         }
 
         @Override
         protected void onSimulationEvent(SimulationEvent<MachineEvent> event) {
             if (event.getType() == MachineEvent.START_TASK) {
-                invokeEvent(duration, new SimulationEvent<>(MachineEvent.TASK_DONE));
+                invokeEvent(getDuration(), new SimulationEvent<>(MachineEvent.TASK_DONE));
                 busy = true;
-                updateRecordValue(RecordType.BUSY_MACHINES, i -> i + 1, 0);
+                getIntRecord(RecordType.BUSY_MACHINES).add(1);
             } else if (event.getType() == MachineEvent.TASK_DONE) {
                 busy = false;
-                updateRecordValue(RecordType.BUSY_MACHINES, i -> i - 1, 0);
+                getIntRecord(RecordType.BUSY_MACHINES).add(- 1);
             }
         }
 
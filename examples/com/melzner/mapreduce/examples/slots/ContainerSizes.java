@@ -0,0 +1,48 @@
+package com.melzner.mapreduce.examples.slots;
+
+import com.melzner.mapreduce.cluster.Machine;
+import com.melzner.mapreduce.examples.TestComputationSimulation;
+import com.melzner.mapreduce.scenario.Scenario;
+import com.melzner.mapreduce.scenario.ScenarioConfig;
+import com.melzner.mapreduce.scenario.SimpleComputationConfig;
+import com.melzner.mapreduce.simulation.Record;
+import com.melzner.mapreduce.simulation.SimulationResult;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** Sweeps the container size on 8 core machines, from 8 containers per machine to one taking the whole machine. */
+public class ContainerSizes extends TestComputationSimulation {
+
+    private static final int MACHINE_CORES = 8;
+    private static final long MACHINE_MEMORY = 32L * 1024 * 1024 * 1024;
+
+    public static void main(String[] args) throws IOException, SAXException {
+        for (int containersPerMachine = MACHINE_CORES; containersPerMachine >= 1; containersPerMachine /= 2) {
+            ScenarioConfig config = ScenarioConfig.load(ContainerSizes.class, SCENARIOS_PATH + "/simpleSimulation.xml");
+            config.clusterConfig.machineCount.set(config.clusterConfig.machineCount.get() / MACHINE_CORES);
+            config.clusterConfig.machineCores.set((double) MACHINE_CORES);
+            config.clusterConfig.machineMemory.set(MACHINE_MEMORY);
+            config.clusterConfig.machineDiskBandwidth.set(200L * 1024 * 1024);
+            for (SimpleComputationConfig computation : config.simpleComputations) {
+                computation.taskCores.set((double) MACHINE_CORES / containersPerMachine);
+                computation.taskMemory.set(MACHINE_MEMORY / containersPerMachine);
+            }
+            SimulationResult result = new Scenario(config).simulate();
+
+            System.out.println(containersPerMachine + " containers per machine: at most "
+                    + (long) getMaximum(result.getRecord(Machine.RecordType.RUNNING_CONTAINERS)) + " containers, "
+                    + getMaximum(result.getRecord(Machine.RecordType.USED_CORES)) + " cores used"
+                    + ", duration " + TimeUnit.NANOSECONDS.toMillis(result.getDuration()) / 1000.0 + " s");
+        }
+    }
+
+    private static double getMaximum(Record record) {
+        double maximum = 0;
+        for (int i = 0; i < record.size(); i++) {
+            maximum = Math.max(maximum, record.getDouble(i));
+        }
+        return maximum;
+    }
+}
@@ -3,7 +3,6 @@ package com.melzner.mapreduce.examples.stragglers;
 import com.melzner.mapreduce.cluster.Machine;
 import com.melzner.mapreduce.examples.TestComputationSimulation;
 import com.melzner.mapreduce.scenario.ScenarioConfig;
-import com.melzner.mapreduce.simulation.RecordHistoryEntry;
 import com.melzner.mapreduce.simulation.SimulationResult;
 import com.melzner.mapreduce.visualizer.Graph;
 import com.melzner.mapreduce.visualizer.GraphVisualizer;
@@ -11,7 +10,6 @@ import org.xml.sax.SAXException;
 
 import java.awt.*;
 import java.io.IOException;
-import java.util.List;
 
 public class Stragglers extends TestComputationSimulation {
 
@@ -24,9 +22,7 @@ public class Stragglers extends TestComputationSimulation {
 
         @Override
         protected void modifyRunningMachinesVisualizer(GraphVisualizer visualizer, SimulationResult result) {
-            List<RecordHistoryEntry> runningStragglers = result.getRecordHistory().get(Machine.RecordType.RUNNING_STRAGGLERS);
-
-            Graph graph = Graph.create(runningStragglers, INT_ENTRY_TO_POINT_TRANSFORMATION);
+            Graph graph = Graph.create(result.getRecord(Machine.RecordType.RUNNING_STRAGGLERS));
             visualizer.addGraph(graph, Color.BLUE);
         }
 
@@ -0,0 +1,19 @@
+package com.melzner.mapreduce.cluster;
+
+import java.util.function.Predicate;
+
+/** Policy choosing the machines the replicas of DFS blocks are stored on, the writing machine gets the first. */
+public interface BlockPlacementPolicy {
+
+    /** @return alive machine for another replica of {@code block}, null if all alive machines are excluded */
+    Machine chooseTarget(long[] block, Predicate<Machine> excluded);
+
+    static boolean holdsReplica(long[] block, Machine machine) {
+        for (int i = 1; i < block.length; i++) {
+            if (block[i] == machine.getId()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
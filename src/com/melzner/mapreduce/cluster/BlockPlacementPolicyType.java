@@ -0,0 +1,33 @@
+package com.melzner.mapreduce.cluster;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+public enum BlockPlacementPolicyType {
+    /** every replica on the machine with the least used drive */
+    LEAST_USED((c, m, r) -> new LeastUsedPlacementPolicy(m)),
+    /** HDFS default: second replica on another rack, third on the rack of the second */
+    RACK_AWARE(RackAwarePlacementPolicy::new),
+    /** every replica on a uniformly chosen machine */
+    RANDOM((c, m, r) -> new RandomPlacementPolicy(m, r)),
+    /** every replica on the less used of two uniformly chosen machines */
+    POWER_OF_TWO((c, m, r) -> new PowerOfTwoPlacementPolicy(m, r));
+
+    private final Constructor constructor;
+
+    BlockPlacementPolicyType(Constructor constructor) {
+        this.constructor = constructor;
+    }
+
+    BlockPlacementPolicy newPolicy(Cluster cluster, MachineHeap machines, SplittableRandom random) {
+        return constructor.create(cluster, machines, random);
+    }
+
+    public static BlockPlacementPolicyType parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    private interface Constructor {
+        BlockPlacementPolicy create(Cluster cluster, MachineHeap machines, SplittableRandom random);
+    }
+}
@@ -0,0 +1,77 @@
+package com.melzner.mapreduce.cluster;
+
+import com.melzner.mapreduce.scenario.ClusterConfig;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Capacity queues like the Hadoop capacity scheduler, capacity a queue doesn't use is lent to the others. */
+class CapacityClusterScheduler implements ClusterScheduler {
+
+    private final Map<String, Double> capacities = new LinkedHashMap<>();
+    private final double machineMemory;
+
+    CapacityClusterScheduler(ClusterConfig configuration) {
+        machineMemory = configuration.machineMemory.get();
+        for (String queue : configuration.schedulerQueues.get().split(";")) {
+            if (! queue.trim().isEmpty()) {
+                int separator = queue.indexOf(':');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("queue '" + queue + "' has no capacity, expected name:capacity");
+                }
+                capacities.put(queue.substring(0, separator).trim(), Double.parseDouble(queue.substring(separator + 1)));
+            }
+        }
+    }
+
+    @Override
+    public double getOccupation(ClusterJob job) {
+        return job.getOccupiedContainers() * (job.getTaskMemory() / machineMemory);
+    }
+
+    @Override
+    public void sortByPriority(List<ClusterJob> jobs) {
+        Map<String, Double> occupations = new HashMap<>();
+        for (ClusterJob job : jobs) {
+            occupations.merge(job.getQueue(), getOccupation(job), Double::sum);
+        }
+        occupations.replaceAll((queue, occupation) -> occupation / getCapacity(queue));
+        jobs.sort(Comparator.<ClusterJob>comparingDouble(job -> occupations.get(job.getQueue()))
+                .thenComparingLong(ClusterJob::getSubmitTime));
+    }
+
+    private double getCapacity(String queue) {
+        return capacities.getOrDefault(queue, 0.0);
+    }
+
+    @Override
+    public double getShare(ClusterJob job, List<ClusterJob> jobs, int machineCount) {
+        Map<String, Integer> queueIndices = new HashMap<>();
+        List<Double> weights = new ArrayList<>();
+        List<Double> demands = new ArrayList<>();
+        List<Double> occupations = new ArrayList<>();
+        for (ClusterJob other : jobs) {
+            int i = queueIndices.computeIfAbsent(other.getQueue(), q -> {
+                weights.add(getCapacity(q));
+                demands.add(0.0);
+                occupations.add(0.0);
+                return weights.size() - 1;
+            });
+            demands.set(i, demands.get(i) + (other.hasTasksToStart() ? Double.POSITIVE_INFINITY : getOccupation(other)));
+            occupations.set(i, occupations.get(i) + getOccupation(other));
+        }
+        double[] weightArray = new double[weights.size()];
+        double[] demandArray = new double[weights.size()];
+        for (int i = 0; i < weightArray.length; i++) {
+            weightArray[i] = weights.get(i);
+            demandArray[i] = demands.get(i);
+        }
+        int queue = queueIndices.get(job.getQueue());
+        double queueShare = ClusterScheduler.maxMinShares(weightArray, demandArray, machineCount)[queue];
+        return queueShare - (occupations.get(queue) - getOccupation(job));
+    }
+}
@@ -6,33 +6,85 @@ import com.melzner.mapreduce.simulation.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
 public class Cluster extends ListenableSimulatable<SimulationEventType, Cluster.ClusterEventType, Cluster.ClusterEvent> {
 
     final ClusterConfig configuration;
+    private final long seed;
+    /** draws randomized configuration values while the scenario is built */
+    private final SplittableRandom configurationRandom;
     private final DFS dfs;
+    private final Network network;
     private final Machine[] machines;
     private final List<Machine> unmodifiableMachines;
+    /** ids of the machines that are alive and not full, iterated in id order like a scan of all machines */
+    private final BitSet freeMachines = new BitSet();
+    private final ClusterScheduler scheduler;
+    /** jobs in submission order, a copy sorted by the scheduler for an offer round and the ones below their share */
+    private final List<ClusterJob> jobs = new ArrayList<>();
+    private final List<ClusterJob> offerOrder = new ArrayList<>();
+    private final BitSet allocatableJobs = new BitSet();
+    /** machines freed or declined since the last offer round and the jobs that declined each one */
+    private final BitSet offeredMachines = new BitSet();
+    private final List<Set<ClusterJob>> decliningJobs = new ArrayList<>();
+    /** free machines only jobs at their share wanted, offered again once a machine is released */
+    private final BitSet deferredMachines = new BitSet();
+    private boolean offerRoundPending;
+    private int aliveMachineCount;
+    private int speculativeInstances;
+    /** observed slowdown above which a machine counts as slow, recomputed once a machine finished a further task */
+    private double slowMachineSlowdown = Double.POSITIVE_INFINITY;
+    private boolean slowdownsObserved;
 
     public Cluster(ClusterConfig configuration) {
+        this(configuration, ThreadLocalRandom.current().nextLong());
+    }
+
+    public Cluster(ClusterConfig configuration, long seed) {
         super(MapReduceExecutionOrder.CLUSTER);
         this.configuration = configuration;
+        this.seed = seed;
+        SplittableRandom random = new SplittableRandom(seed);
+        SplittableRandom placementRandom = random.split();
+        configurationRandom = random;
         machines = new Machine[configuration.machineCount.get()];
         for (int i = 0; i < configuration.machineCount.get(); i++) {
             Machine machine = new Machine(this, i, configuration);
             machines[i] = machine;
         }
         unmodifiableMachines = List.of(machines);
-        dfs = new DFS(this);
+        freeMachines.set(0, machines.length);
+        aliveMachineCount = machines.length;
+        for (int i = 0; i < machines.length; i++) {
+            decliningJobs.add(new HashSet<>());
+        }
+        scheduler = configuration.scheduler.get().newScheduler(configuration);
+        dfs = new DFS(this, placementRandom);
+        network = new Network(this, configuration);
+    }
+
+    /** seeded stream for randomized configuration values drawn before the simulation starts */
+    public SplittableRandom getConfigurationRandom() {
+        return configurationRandom;
     }
 
     public DFS getDFS() {
         return dfs;
     }
 
+    public Network getNetwork() {
+        return network;
+    }
+
     public List<Machine> getMachines() {
         return unmodifiableMachines;
     }
@@ -102,7 +154,7 @@ public class Cluster extends ListenableSimulatable<SimulationEventType, Cluster.
 
     @Override
     protected void startSimulation() {
-
+        dfs.recordStoredBytes(getLongRecord(DFS.RecordType.STORED_BYTES));
     }
 
     @Override
@@ -115,38 +167,197 @@ public class Cluster extends ListenableSimulatable<SimulationEventType, Cluster.
         for (Machine machine : machines) {
             simulation.add(machine);
         }
+        simulation.add(network);
+        if (dfs.getReplicationMonitor().isEnabled()) {
+            // only added when needed, another simulatable would change the random streams of the following ones
+            simulation.add(dfs.getReplicationMonitor());
+        }
     }
 
     @Override
     public Simulatable<SimulationEventType> newInitialInstance() {
-        return new Cluster(configuration);
+        return new Cluster(configuration, seed);
     }
 
     public void onMachineFailed(Machine machine) {
+        freeMachines.clear(machine.getId());
+        aliveMachineCount--;
         fireEvent(ClusterEventType.MACHINE_FAILED, new ClusterEvent(machine));
     }
 
-    public void onBusyStateChanged(Machine machine) {
+    void onAllocationChanged(Machine machine, boolean released) {
+        boolean free = ! machine.isBusy() && machine.isAlive();
+        freeMachines.set(machine.getId(), free);
+        if (released) {
+            decliningJobs.get(machine.getId()).clear();
+        }
+        if (free) {
+            if (released) {
+                // released resources lower the occupation of some job, which may leave room for the deferred ones
+                offeredMachines.or(deferredMachines);
+                deferredMachines.clear();
+            }
+            offer(machine);
+        }
         fireEvent(ClusterEventType.BUSY_STATE_CHANGED, new ClusterEvent(machine));
     }
 
+    /** machines freed at one timestamp are offered in one round, to the jobs in the order of the scheduler */
+    public void submitJob(ClusterJob job) {
+        jobs.add(job);
+    }
+
+    public List<ClusterJob> getJobs() {
+        return Collections.unmodifiableList(jobs);
+    }
+
+    public ClusterScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public boolean maySpeculate() {
+        return speculativeInstances < configuration.speculativeCap.get() * aliveMachineCount;
+    }
+
+    public void onSpeculativeInstanceStarted() {
+        speculativeInstances++;
+    }
+
+    public void onSpeculativeInstanceEnded() {
+        speculativeInstances--;
+    }
+
+    void onSlowdownObserved() {
+        slowdownsObserved = true;
+    }
+
+    /** a machine that didn't finish a task yet counts as slow, it may be a straggler itself */
+    public boolean isSlowMachine(Machine machine) {
+        if (slowdownsObserved) {
+            slowdownsObserved = false;
+            double[] slowdowns = new double[machines.length];
+            int count = 0;
+            for (Machine m : machines) {
+                if (! Double.isNaN(m.getObservedSlowdown())) {
+                    slowdowns[count++] = m.getObservedSlowdown();
+                }
+            }
+            Arrays.sort(slowdowns, 0, count);
+            slowMachineSlowdown = slowdowns[(int) ((1 - configuration.slowNodeThreshold.get()) * (count - 1))];
+        }
+        return ! (machine.getObservedSlowdown() <= slowMachineSlowdown);
+    }
+
+    public boolean mayAllocate(ClusterJob job) {
+        return scheduler.getOccupation(job) < scheduler.getShare(job, jobs, aliveMachineCount);
+    }
+
+    /** the machine is offered again at the next round, not to jobs that declined it before */
+    public void declineMachine(Machine machine, ClusterJob job) {
+        if (mayAllocate(job)) {
+            decliningJobs.get(machine.getId()).add(job);
+        }
+        offer(machine);
+    }
+
+    private void offer(Machine machine) {
+        offeredMachines.set(machine.getId());
+        if (! offerRoundPending) {
+            offerRoundPending = true;
+            invokeAction(0, this::offerMachines);
+        }
+    }
+
+    private void offerMachines() {
+        offerRoundPending = false;
+        boolean allocatable = sortOfferOrder();
+        for (int id = offeredMachines.nextSetBit(0); id >= 0; id = offeredMachines.nextSetBit(id + 1)) {
+            offeredMachines.clear(id);
+            if (! freeMachines.get(id)) {
+                continue;
+            } else if (! allocatable) {
+                // shares only grow when machines are released, no need to ask every job for every machine
+                deferredMachines.set(id);
+                continue;
+            }
+            boolean deferred = false;
+            for (int i = 0; i < offerOrder.size(); i++) {
+                ClusterJob job = offerOrder.get(i);
+                if (decliningJobs.get(id).contains(job)) {
+                    continue;
+                } else if (! allocatableJobs.get(i)) {
+                    deferred |= job.hasTasksToStart();
+                } else if (job.offer(machines[id])) {
+                    // occupations and thereby priorities and shares only change when a job accepts a machine
+                    deferred = false;
+                    allocatable = sortOfferOrder();
+                    break;
+                }
+            }
+            deferredMachines.set(id, deferred);
+        }
+    }
+
+    private boolean sortOfferOrder() {
+        offerOrder.clear();
+        offerOrder.addAll(jobs);
+        scheduler.sortByPriority(offerOrder);
+        allocatableJobs.clear();
+        boolean allocatable = false;
+        for (int i = 0; i < offerOrder.size(); i++) {
+            if (mayAllocate(offerOrder.get(i))) {
+                allocatableJobs.set(i);
+                allocatable |= offerOrder.get(i).hasTasksToStart();
+            }
+        }
+        return allocatable;
+    }
+
+    public Locality getLocality(Machine reader, Machine holder) {
+        if (reader == holder) {
+            return Locality.NODE_LOCAL;
+        }
+        return reader.getRack() == holder.getRack() ? Locality.RACK_LOCAL : Locality.OFF_RACK;
+    }
+
     public Machine getMachine(int id) {
         return machines[id];
     }
 
     public Machine getFreeMachine() {
-        return getFreeMachine(m -> true);
+        int id = freeMachines.nextSetBit(0);
+        return id < 0 ? null : machines[id];
     }
 
     public Machine getFreeMachine(Predicate<Machine> condition) {
-        for (Machine machine : machines) {
-            if (! machine.isBusy() && machine.isAlive() && condition.test(machine)) {
-                return machine;
+        for (int id = freeMachines.nextSetBit(0); id >= 0; id = freeMachines.nextSetBit(id + 1)) {
+            if (condition.test(machines[id])) {
+                return machines[id];
             }
         }
         return null;
     }
 
+    public int getFreeMachineCount() {
+        return freeMachines.cardinality();
+    }
+
+    public int getRackCount() {
+        return machines[machines.length - 1].getRack() + 1;
+    }
+
+    public void forEachFreeMachine(Predicate<Machine> consumer) {
+        for (int id = freeMachines.nextSetBit(0); id >= 0; id = freeMachines.nextSetBit(id + 1)) {
+            if (! consumer.test(machines[id])) {
+                return;
+            }
+        }
+    }
+
+    public boolean isFree(Machine machine) {
+        return freeMachines.get(machine.getId());
+    }
+
     private static class PrintBlock {
 
         private final String[] lines;
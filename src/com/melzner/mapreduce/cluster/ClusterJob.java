@@ -0,0 +1,32 @@
+package com.melzner.mapreduce.cluster;
+
+public interface ClusterJob {
+
+    String getName();
+
+    long getSubmitTime();
+
+    default double getWeight() {
+        return 1;
+    }
+
+    default String getQueue() {
+        return "default";
+    }
+
+    default double getTaskCores() {
+        return 1;
+    }
+
+    default long getTaskMemory() {
+        return 0;
+    }
+
+    /** @return containers running tasks of the job or about to, including accepted offers */
+    int getOccupiedContainers();
+
+    boolean hasTasksToStart();
+
+    /** @return true if the machine is taken, it isn't offered to the following jobs then */
+    boolean offer(Machine machine);
+}
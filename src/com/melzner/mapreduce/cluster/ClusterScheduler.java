@@ -0,0 +1,56 @@
+package com.melzner.mapreduce.cluster;
+
+import java.util.List;
+
+/** Policy sharing the machines of a {@link Cluster} between concurrent jobs. */
+public interface ClusterScheduler {
+
+    /** sorting must be stable, so jobs of equal rank stay in submission order */
+    void sortByPriority(List<ClusterJob> jobs);
+
+    /** @return machines {@code job} may occupy, considering the demand of the other jobs */
+    double getShare(ClusterJob job, List<ClusterJob> jobs, int machineCount);
+
+    default double getOccupation(ClusterJob job) {
+        return job.getOccupiedContainers();
+    }
+
+    /** weighted max-min fair shares, entries of weight 0 only share what's left after all others are satisfied */
+    static double[] maxMinShares(double[] weights, double[] demands, double capacity) {
+        double[] shares = new double[weights.length];
+        boolean[] done = new boolean[weights.length];
+        double remaining = capacity;
+        for (boolean weighted : new boolean[] {true, false}) {
+            while (remaining > 0) {
+                double weightSum = 0;
+                for (int i = 0; i < weights.length; i++) {
+                    if (! done[i] && (weights[i] > 0) == weighted) {
+                        weightSum += weighted ? weights[i] : 1;
+                    }
+                }
+                if (weightSum == 0) {
+                    break;
+                }
+                double level = remaining / weightSum;
+                boolean capped = false;
+                for (int i = 0; i < weights.length; i++) {
+                    if (! done[i] && (weights[i] > 0) == weighted && demands[i] <= (weighted ? weights[i] : 1) * level) {
+                        shares[i] = demands[i];
+                        remaining -= demands[i];
+                        done[i] = capped = true;
+                    }
+                }
+                if (! capped) {
+                    for (int i = 0; i < weights.length; i++) {
+                        if (! done[i] && (weights[i] > 0) == weighted) {
+                            shares[i] = (weighted ? weights[i] : 1) * level;
+                            done[i] = true;
+                        }
+                    }
+                    remaining = 0;
+                }
+            }
+        }
+        return shares;
+    }
+}
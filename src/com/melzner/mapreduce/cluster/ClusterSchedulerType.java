@@ -0,0 +1,31 @@
+package com.melzner.mapreduce.cluster;
+
+import com.melzner.mapreduce.scenario.ClusterConfig;
+
+import java.util.Locale;
+import java.util.function.Function;
+
+public enum ClusterSchedulerType {
+    /** jobs in submission order, every job takes as many machines as it can use */
+    FIFO(c -> new FifoClusterScheduler()),
+    /** weighted max-min fair share of memory per job */
+    FAIR(FairClusterScheduler::new),
+    /** queues with guaranteed memory capacities, idle capacity is lent to the other queues */
+    CAPACITY(CapacityClusterScheduler::new),
+    /** dominant resource fairness over the cores and memory the containers of a job occupy */
+    DRF(DrfClusterScheduler::new);
+
+    private final Function<ClusterConfig, ClusterScheduler> constructor;
+
+    ClusterSchedulerType(Function<ClusterConfig, ClusterScheduler> constructor) {
+        this.constructor = constructor;
+    }
+
+    ClusterScheduler newScheduler(ClusterConfig configuration) {
+        return constructor.apply(configuration);
+    }
+
+    public static ClusterSchedulerType parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -2,27 +2,165 @@ package com.melzner.mapreduce.cluster;
 
 import com.melzner.mapreduce.cluster.Cluster.ClusterEventType;
 import com.melzner.mapreduce.scenario.ClusterConfig;
+import com.melzner.mapreduce.simulation.LongRecord;
 
-import java.util.Comparator;
-import java.util.PriorityQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.IntConsumer;
 import java.util.function.Predicate;
 
+/** Distributed file system storing every block as replicas or erasure coded fragments on distinct machines. */
 public class DFS {
 
-    public static final int COPY_COUNT = 3;
-    private final PriorityQueue<Machine> machinesByDriveUsage = new PriorityQueue<>(Comparator.comparingLong(o -> o.hardDrive.driveUsage));
+    private final MachineHeap machinesByDriveUsage;
+    private final BlockPlacementPolicy placementPolicy;
+    /** units stored of every block and units needed to read a block */
+    private final int units, dataUnits;
     private final Cluster cluster;
+    private final ReplicationMonitor replicationMonitor;
+    private final Map<Integer, DFSFile> files = new HashMap<>();
+    /** replicas stored on each machine as file id in the upper and block index in the lower half of each entry */
+    private final long[][] replicasByMachine;
+    private final int[] replicaCounts;
+    private long storedBytes;
+    /** set once the simulation started */
+    private LongRecord storedBytesRecord;
     private int currentFileId;
 
-    public DFS(Cluster cluster) {
+    public DFS(Cluster cluster, SplittableRandom random) {
         this.cluster = cluster;
-        machinesByDriveUsage.addAll(cluster.getMachines());
+        machinesByDriveUsage = new MachineHeap(cluster.getMachines().size(), random.split());
+        for (Machine machine : cluster.getMachines()) {
+            machinesByDriveUsage.add(machine);
+        }
+        placementPolicy = cluster.configuration.dfsBlockPlacement.get()
+                .newPolicy(cluster, machinesByDriveUsage, random);
+        ErasureCoding coding = cluster.configuration.dfsErasureCoding.get();
+        dataUnits = coding.getDataUnits();
+        units = coding == ErasureCoding.NONE ? cluster.configuration.dfsReplication.get()
+                : dataUnits + coding.getParityUnits();
+        if (units < 1) {
+            throw new IllegalArgumentException("replication " + units + " is below 1");
+        }
+        replicasByMachine = new long[cluster.getMachines().size()][];
+        replicaCounts = new int[replicasByMachine.length];
+        replicationMonitor = new ReplicationMonitor(cluster, this, cluster.configuration);
+        cluster.addListener(ClusterEventType.MACHINE_FAILED, e -> handleMachineFail(e.machine));
     }
 
     public DFSFile writeFile(long size) {
         return new DFSFile(currentFileId++, size, cluster.configuration);
     }
 
+    public int getUnits() {
+        return units;
+    }
+
+    public int getDataUnits() {
+        return dataUnits;
+    }
+
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    long getBlockUnitSize(long[] block) {
+        return (block[0] + dataUnits - 1) / dataUnits;
+    }
+
+    void recordStoredBytes(LongRecord record) {
+        storedBytesRecord = record;
+        record.set(storedBytes);
+    }
+
+    private void storeReplica(Machine machine, int fileId, int index, long size) {
+        machine.hardDrive.newBlock(fileId, index, size);
+        machinesByDriveUsage.update(machine);
+        addStoredBytes(size);
+        int id = machine.getId();
+        long[] replicas = replicasByMachine[id];
+        if (replicas == null) {
+            replicas = replicasByMachine[id] = new long[16];
+        } else if (replicaCounts[id] == replicas.length) {
+            replicas = replicasByMachine[id] = Arrays.copyOf(replicas, 2 * replicas.length);
+        }
+        replicas[replicaCounts[id]++] = (long) fileId << 32 | index;
+    }
+
+    private void addStoredBytes(long bytes) {
+        storedBytes += bytes;
+        if (storedBytesRecord != null) {
+            storedBytesRecord.add(bytes);
+        }
+    }
+
+    ReplicationMonitor getReplicationMonitor() {
+        return replicationMonitor;
+    }
+
+    private void handleMachineFail(Machine machine) {
+        machinesByDriveUsage.remove(machine);
+        replicationMonitor.cancelCopies(machine);
+        int id = machine.getId();
+        long[] replicas = replicasByMachine[id];
+        int count = replicaCounts[id];
+        replicasByMachine[id] = null;
+        replicaCounts[id] = 0;
+        if (replicas == null) {
+            return;
+        }
+        Arrays.sort(replicas, 0, count);
+        for (int i = 0; i < count; i++) {
+            DFSFile file = files.get((int) (replicas[i] >>> 32));
+            int index = (int) replicas[i];
+            long size = getBlockUnitSize(file.blocks[index]);
+            machine.hardDrive.removeBlock(file.fileId, index, size);
+            addStoredBytes(- size);
+            if (i > 0 && replicas[i] == replicas[i - 1]) {
+                // two replicas of the block were on the machine, both are replaced at once
+                continue;
+            }
+            file.replaceReplicas(index, id);
+        }
+        if (replicationMonitor.isEnabled()) {
+            replicationMonitor.startCopies();
+        }
+    }
+
+    /** @return [size, machine1, machine2, ...] of block {@code key}, - 1 for lost replicas or fragments */
+    long[] getBlock(long key) {
+        return files.get((int) (key >>> 32)).blocks[(int) key];
+    }
+
+    Machine chooseReplicaTarget(long[] block, Predicate<Machine> excluded) {
+        return placementPolicy.chooseTarget(block, excluded);
+    }
+
+    int addReplica(long key, Machine machine) {
+        long[] block = getBlock(key);
+        int replicas = 0;
+        boolean stored = false;
+        for (int i = 1; i < block.length; i++) {
+            if (block[i] < 0 && ! stored) {
+                block[i] = machine.getId();
+                storeReplica(machine, (int) (key >>> 32), (int) key, getBlockUnitSize(block));
+                stored = true;
+            }
+            replicas += block[i] >= 0 ? 1 : 0;
+        }
+        return replicas;
+    }
+
+    public DFSFile createFile() {
+        DFSFile file = new DFSFile(currentFileId++, 0, cluster.configuration);
+        file.closed = false;
+        return file;
+    }
+
     public int newFileId() {
         return currentFileId++;
     }
@@ -30,55 +168,227 @@ public class DFS {
     public class DFSFile {
 
         private final int fileId;
-        /** stores [size, machine1, machine2, machine3] for each block */
+        /** stores [size, machine1, machine2, ...] for each block, data fragments first */
         long[][] blocks;
+        int blockCount;
         long blockSize;
+        private boolean closed = true;
+        private final List<IntConsumer> blockWrittenListeners = new ArrayList<>();
+        private final List<Runnable> closedListeners = new ArrayList<>();
 
         DFSFile(int fileId, long size, ClusterConfig configuration) {
             this.fileId = fileId;
-            blockSize = configuration.dfsBlockSize.get();
+            files.put(fileId, this);
+            blockSize = configuration.dfsBlockSize.get(cluster.getConfigurationRandom());
             int blockCount = (int) (size / blockSize + (size % blockSize != 0 ? 1 : 0));
             blocks = new long[blockCount][];
+            this.blockCount = blockCount;
 
-            for (int i = 0; i < blocks.length; i++) {
-                long[] block = new long[COPY_COUNT + 1];
-                block[0] = blockSize;
-                for (int j = 0; j < COPY_COUNT; j++) {
-                    block[j + 1] = writeBlockOnNewMachine(i, blockSize);
+            for (int i = 0; i < blockCount; i++) {
+                long[] block = newBlock(blockSize);
+                for (int j = 1; j < block.length; j++) {
+                    block[j] = writeReplicaOnNewMachine(i, block);
                 }
                 blocks[i] = block;
             }
-
-            cluster.addListener(ClusterEventType.MACHINE_FAILED, e -> handleMachineFail(e.machine));
         }
 
         public int getFileId() {
             return fileId;
         }
 
-        private int writeBlockOnNewMachine(int index, long blockSize) {
-            Machine machine = machinesByDriveUsage.poll();
-            //noinspection ConstantConditions
-            machine.hardDrive.newBlock(fileId, index, blockSize);
-            machinesByDriveUsage.add(machine);
+        private long[] newBlock(long size) {
+            long[] block = new long[units + 1];
+            Arrays.fill(block, - 1);
+            block[0] = size;
+            return block;
+        }
+
+        private int writeReplicaOnNewMachine(int index, long[] block) {
+            Machine machine = placementPolicy.chooseTarget(block, m -> false);
+            if (machine == null) {
+                // fewer machines alive than replicas
+                machine = machinesByDriveUsage.getLeastUsed(m -> true);
+                if (machine == null) {
+                    throw new IllegalStateException("no machine alive to store block " + index + " of file " + fileId);
+                }
+            }
+            storeReplica(machine, fileId, index, getBlockUnitSize(block));
             return machine.getId();
         }
 
-        private void handleMachineFail(Machine machine) {
-            machinesByDriveUsage.remove(machine);
-            int id = machine.getId();
-            for (int iBlock = 0; iBlock < blocks.length; iBlock++) {
-                long[] block = blocks[iBlock];
+        /** replicas are received in a pipeline, erasure coded fragments are encoded and sent by the writer */
+        public void write(Machine writer, long size, Runnable onWritten) {
+            if (closed) {
+                throw new UnsupportedOperationException("file is closed");
+            }
+            int count = (int) (size / blockSize + (size % blockSize != 0 ? 1 : 0));
+            if (count == 0) {
+                cluster.invokeAction(0, onWritten);
+                return;
+            }
+            int[] pendingBlocks = {count};
+            for (int i = 0; i < count; i++) {
+                int index = blockCount;
+                long[] block = newBlock(Math.min(blockSize, size - i * blockSize));
+                if (machinesByDriveUsage.contains(writer)) {
+                    storeReplica(writer, fileId, index, getBlockUnitSize(block));
+                    block[1] = writer.getId();
+                } else {
+                    // the writer failed meanwhile
+                    block[1] = writeReplicaOnNewMachine(index, block);
+                }
+                for (int j = 2; j < block.length; j++) {
+                    block[j] = writeReplicaOnNewMachine(index, block);
+                }
+                if (blockCount == blocks.length) {
+                    blocks = Arrays.copyOf(blocks, Math.max(2 * blockCount, 16));
+                }
+                blocks[blockCount++] = block;
+
+                int[] pendingReplicas = {block.length - 2};
+                Runnable onReplicaWritten = () -> {
+                    if (-- pendingReplicas[0] == 0) {
+                        for (IntConsumer listener : blockWrittenListeners) {
+                            listener.accept(index);
+                        }
+                        if (-- pendingBlocks[0] == 0) {
+                            onWritten.run();
+                        }
+                    }
+                };
+                if (block.length == 2) {
+                    // a single replica is readable once the writer stored it
+                    pendingReplicas[0] = 1;
+                    cluster.invokeAction(0, onReplicaWritten);
+                }
+                for (int j = 2; j < block.length; j++) {
+                    int source = (int) block[dataUnits == 1 ? j - 1 : 1];
+                    cluster.getNetwork().transfer(cluster.getMachine(source), cluster.getMachine((int) block[j]),
+                            getBlockUnitSize(block), onReplicaWritten);
+                }
+            }
+        }
+
+        public void close() {
+            closed = true;
+            for (Runnable listener : closedListeners) {
+                listener.run();
+            }
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        public void onBlockWritten(IntConsumer listener) {
+            blockWrittenListeners.add(listener);
+        }
+
+        public void onClosed(Runnable listener) {
+            closedListeners.add(listener);
+        }
+
+        private void replaceReplicas(int index, int failedMachine) {
+            long[] block = blocks[index];
+            if (! replicationMonitor.isEnabled()) {
                 for (int i = 1; i < block.length; i++) {
-                    if (block[i] == id) {
-                        block[i] = writeBlockOnNewMachine(iBlock, block[0]);
+                    if (block[i] == failedMachine) {
+                        block[i] = - 1;
+                        block[i] = writeReplicaOnNewMachine(index, block);
                     }
                 }
+                return;
+            }
+            int replicas = 0;
+            for (int i = 1; i < block.length; i++) {
+                if (block[i] == failedMachine) {
+                    block[i] = - 1;
+                } else if (block[i] >= 0) {
+                    replicas++;
+                }
+            }
+            long key = (long) fileId << 32 | index;
+            if (replicas >= dataUnits) {
+                replicationMonitor.onUnderReplicated(key, replicas);
+                return;
+            }
+            // too few units left to copy or reconstruct from, the block is restored without traffic
+            replicationMonitor.onBlockLost(key);
+            for (int i = 1; i < block.length; i++) {
+                if (block[i] < 0) {
+                    block[i] = writeReplicaOnNewMachine(index, block);
+                }
             }
         }
 
         public int getBlockCount() {
-            return blocks.length;
+            return blockCount;
+        }
+
+        public Locality getLocality(int index, Machine machine) {
+            if (dataUnits == 1) {
+                return cluster.getLocality(machine, getClosestReplica(index, machine));
+            }
+            Locality farthest = Locality.NODE_LOCAL;
+            for (Machine source : getReadSources(index, machine)) {
+                Locality locality = cluster.getLocality(machine, source);
+                if (locality.compareTo(farthest) > 0) {
+                    farthest = locality;
+                }
+            }
+            return farthest;
+        }
+
+        /** the closest replica, or the data fragments with parity fragments in place of the lost ones */
+        public List<Machine> getReadSources(int index, Machine machine) {
+            if (dataUnits == 1) {
+                return List.of(getClosestReplica(index, machine));
+            }
+            long[] block = blocks[index];
+            List<Machine> sources = new ArrayList<>(dataUnits);
+            for (int i = 1; i < block.length && sources.size() < dataUnits; i++) {
+                if (block[i] >= 0) {
+                    sources.add(cluster.getMachine((int) block[i]));
+                }
+            }
+            return sources;
+        }
+
+        public boolean isDegraded(int index) {
+            long[] block = blocks[index];
+            for (int i = 1; i <= dataUnits && dataUnits > 1; i++) {
+                if (block[i] < 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public Machine getClosestReplica(int index, Machine machine) {
+            Machine closest = null;
+            Locality closestLocality = null;
+            long[] block = blocks[index];
+            for (int i = 1; i < block.length; i++) {
+                if (block[i] < 0) {
+                    continue;
+                }
+                Machine replica = cluster.getMachine((int) block[i]);
+                Locality locality = cluster.getLocality(machine, replica);
+                if (closest == null || locality.compareTo(closestLocality) < 0) {
+                    closest = replica;
+                    closestLocality = locality;
+                }
+            }
+            return closest;
+        }
+
+        public long getBlockSize(int index) {
+            return blocks[index][0];
+        }
+
+        public long getUnitSize(int index) {
+            return getBlockUnitSize(blocks[index]);
         }
 
         public Machine getFreeMachineForBlock(int index) {
@@ -88,12 +398,19 @@ public class DFS {
         public Machine getFreeMachineForBlock(int index, Predicate<Machine> filter) {
             long[] block = blocks[index];
             for (int i = 1; i < block.length; i++) {
+                if (block[i] < 0) {
+                    continue;
+                }
                 Machine machine = cluster.getMachine((int) block[i]);
-                if (! machine.isBusy() && machine.isAlive() && filter.test(machine)) {
+                if (cluster.isFree(machine) && filter.test(machine)) {
                     return machine;
                 }
             }
             return null;
         }
     }
+
+    public enum RecordType {
+        UNDER_REPLICATED_BLOCKS, RE_REPLICATION_COPIES, RE_REPLICATED_BYTES, LOST_BLOCKS, STORED_BYTES, DEGRADED_READS
+    }
 }
@@ -0,0 +1,17 @@
+package com.melzner.mapreduce.cluster;
+
+import com.melzner.mapreduce.scenario.ClusterConfig;
+
+/** Dominant resource fairness (Ghodsi et al., 2011). */
+class DrfClusterScheduler extends FairClusterScheduler {
+
+    DrfClusterScheduler(ClusterConfig configuration) {
+        super(configuration);
+    }
+
+    @Override
+    public double getOccupation(ClusterJob job) {
+        return job.getOccupiedContainers()
+                * Math.max(job.getTaskCores() / machineCores, job.getTaskMemory() / machineMemory);
+    }
+}
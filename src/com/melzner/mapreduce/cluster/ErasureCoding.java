@@ -0,0 +1,30 @@
+package com.melzner.mapreduce.cluster;
+
+import java.util.Locale;
+
+/** Layout of the DFS blocks, replicated or striped into the data and parity fragments of a Reed-Solomon code. */
+public enum ErasureCoding {
+    NONE(1, 0),
+    RS_6_3(6, 3),
+    RS_10_4(10, 4);
+
+    private final int dataUnits, parityUnits;
+
+    ErasureCoding(int dataUnits, int parityUnits) {
+        this.dataUnits = dataUnits;
+        this.parityUnits = parityUnits;
+    }
+
+    public int getDataUnits() {
+        return dataUnits;
+    }
+
+    public int getParityUnits() {
+        return parityUnits;
+    }
+
+    /** @param value name of the code, e.g. "RS-6-3" */
+    public static ErasureCoding parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+}
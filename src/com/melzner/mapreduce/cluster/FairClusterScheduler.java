@@ -0,0 +1,44 @@
+package com.melzner.mapreduce.cluster;
+
+import com.melzner.mapreduce.scenario.ClusterConfig;
+
+import java.util.Comparator;
+import java.util.List;
+
+/** Fair sharing like the Hadoop fair scheduler, occupations are the memory of the job's containers. */
+class FairClusterScheduler implements ClusterScheduler {
+
+    final double machineCores;
+    final double machineMemory;
+
+    FairClusterScheduler(ClusterConfig configuration) {
+        machineCores = configuration.machineCores.get();
+        machineMemory = configuration.machineMemory.get();
+    }
+
+    @Override
+    public double getOccupation(ClusterJob job) {
+        return job.getOccupiedContainers() * (job.getTaskMemory() / machineMemory);
+    }
+
+    @Override
+    public void sortByPriority(List<ClusterJob> jobs) {
+        jobs.sort(Comparator.comparingDouble(job -> getOccupation(job) / job.getWeight()));
+    }
+
+    @Override
+    public double getShare(ClusterJob job, List<ClusterJob> jobs, int machineCount) {
+        double[] weights = new double[jobs.size()];
+        double[] demands = new double[jobs.size()];
+        int index = - 1;
+        for (int i = 0; i < jobs.size(); i++) {
+            ClusterJob other = jobs.get(i);
+            weights[i] = other.getWeight();
+            demands[i] = other.hasTasksToStart() ? Double.POSITIVE_INFINITY : getOccupation(other);
+            if (other == job) {
+                index = i;
+            }
+        }
+        return ClusterScheduler.maxMinShares(weights, demands, machineCount)[index];
+    }
+}
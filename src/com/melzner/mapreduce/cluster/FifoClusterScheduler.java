@@ -0,0 +1,17 @@
+package com.melzner.mapreduce.cluster;
+
+import java.util.Comparator;
+import java.util.List;
+
+class FifoClusterScheduler implements ClusterScheduler {
+
+    @Override
+    public void sortByPriority(List<ClusterJob> jobs) {
+        jobs.sort(Comparator.comparingLong(ClusterJob::getSubmitTime));
+    }
+
+    @Override
+    public double getShare(ClusterJob job, List<ClusterJob> jobs, int machineCount) {
+        return Double.POSITIVE_INFINITY;
+    }
+}
@@ -2,12 +2,16 @@ package com.melzner.mapreduce.cluster;
 
 import com.melzner.mapreduce.scenario.ClusterConfig;
 
-import java.util.*;
+import java.util.Arrays;
 
+/** Drive of a machine storing DFS blocks, the block indices of every file are kept in a sorted int array. */
 public class HardDrive {
 
+    private static final int[] NO_BLOCKS = {};
+
     private final long maxSingleDriveSize;
-    private final Map<Integer, BlockCluster> blocksByFile = new HashMap<>();
+    /** blocks by file id, null for files without blocks on the drive */
+    private BlockCluster[] blocksByFile = new BlockCluster[0];
     long driveUsage;
 
     HardDrive(ClusterConfig configuration) {
@@ -22,31 +26,78 @@ public class HardDrive {
         return driveUsage;
     }
 
+    /** a block stored twice is listed twice */
     public void newBlock(int fileId, int blockId, long blockSize) {
         if (driveUsage + blockSize > maxSingleDriveSize) {
             throw new HardDriveOverflowException();
         }
-        blocksByFile.computeIfAbsent(fileId, i -> new BlockCluster()).addBlock(blockId, blockSize);
+        if (fileId >= blocksByFile.length) {
+            blocksByFile = Arrays.copyOf(blocksByFile, Math.max(fileId + 1, 2 * blocksByFile.length));
+        }
+        if (blocksByFile[fileId] == null) {
+            blocksByFile[fileId] = new BlockCluster();
+        }
+        blocksByFile[fileId].addBlock(blockId);
         driveUsage = driveUsage + blockSize;
     }
 
-    public Set<Integer> getBlocksForFile(DFS.DFSFile file) {
-        BlockCluster cluster = blocksByFile.get(file.getFileId());
-        if (cluster == null) {
-            return Collections.emptySet();
-        } else {
-            return Collections.unmodifiableSet(cluster.blocks);
+    /** @return false if the block isn't stored on the drive */
+    public boolean removeBlock(int fileId, int blockId, long blockSize) {
+        BlockCluster cluster = fileId < blocksByFile.length ? blocksByFile[fileId] : null;
+        if (cluster == null || ! cluster.removeBlock(blockId)) {
+            return false;
+        }
+        if (cluster.count == 0) {
+            blocksByFile[fileId] = null;
         }
+        driveUsage = driveUsage - blockSize;
+        return true;
+    }
+
+    public int getBlockCount(DFS.DFSFile file) {
+        BlockCluster cluster = getCluster(file);
+        return cluster == null ? 0 : cluster.count;
+    }
+
+    public int getBlock(DFS.DFSFile file, int i) {
+        BlockCluster cluster = getCluster(file);
+        if (cluster == null || i >= cluster.count) {
+            throw new IndexOutOfBoundsException("block " + i + " of " + getBlockCount(file));
+        }
+        return cluster.blocks[i];
+    }
+
+    private BlockCluster getCluster(DFS.DFSFile file) {
+        return file.getFileId() < blocksByFile.length ? blocksByFile[file.getFileId()] : null;
     }
 
     private static class BlockCluster {
 
-        long size;
-        Set<Integer> blocks = new HashSet<>();
+        int[] blocks = NO_BLOCKS;
+        int count;
+
+        void addBlock(int blockId) {
+            if (count == blocks.length) {
+                blocks = Arrays.copyOf(blocks, Math.max(4, 2 * count));
+            }
+            // blocks are mostly written in ascending order, the others are inserted at their position
+            int index = count;
+            while (index > 0 && blocks[index - 1] > blockId) {
+                index--;
+            }
+            System.arraycopy(blocks, index, blocks, index + 1, count - index);
+            blocks[index] = blockId;
+            count++;
+        }
 
-        public void addBlock(int blockId, long blockSize) {
-            size += blockSize;
-            blocks.add(blockId);
+        boolean removeBlock(int blockId) {
+            int index = Arrays.binarySearch(blocks, 0, count, blockId);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(blocks, index + 1, blocks, index, count - index - 1);
+            count--;
+            return true;
         }
     }
 }
@@ -0,0 +1,21 @@
+package com.melzner.mapreduce.cluster;
+
+import java.util.function.Predicate;
+
+/**
+ * Every replica goes to the machine with the least used drive, regardless of racks. Fills the drives evenly but
+ * may put all replicas of a block into one rack.
+ */
+class LeastUsedPlacementPolicy implements BlockPlacementPolicy {
+
+    private final MachineHeap machines;
+
+    LeastUsedPlacementPolicy(MachineHeap machines) {
+        this.machines = machines;
+    }
+
+    @Override
+    public Machine chooseTarget(long[] block, Predicate<Machine> excluded) {
+        return machines.getLeastUsed(m -> ! BlockPlacementPolicy.holdsReplica(block, m) && ! excluded.test(m));
+    }
+}
@@ -0,0 +1,7 @@
+package com.melzner.mapreduce.cluster;
+
+public enum Locality {
+    NODE_LOCAL,
+    RACK_LOCAL,
+    OFF_RACK
+}
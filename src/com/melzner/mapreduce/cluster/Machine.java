@@ -2,25 +2,44 @@ package com.melzner.mapreduce.cluster;
 
 import com.melzner.mapreduce.computation.MapReduceExecutionOrder;
 import com.melzner.mapreduce.scenario.ClusterConfig;
+import com.melzner.mapreduce.simulation.DoubleRecord;
+import com.melzner.mapreduce.simulation.IntRecord;
+import com.melzner.mapreduce.simulation.LongRecord;
 import com.melzner.mapreduce.simulation.Simulatable;
 import com.melzner.mapreduce.simulation.SimulationEvent;
+import com.melzner.mapreduce.simulation.SimulationEventPool;
 import com.melzner.mapreduce.simulation.SimulationEventType;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 import java.util.function.Consumer;
 
+/** Node of the cluster running as many containers of tasks concurrently as fit into its cores and memory. */
 public class Machine extends Simulatable<Machine.EventType> {
 
-    private static final Random random = new Random();
     final HardDrive hardDrive;
     private final Cluster cluster;
     private final int id;
     private final ClusterConfig configuration;
-    private final double computationSpeed;
-    private final boolean isStraggler;
-    private boolean busy, alive = true;
+    private final SimulationEventPool<StartTaskEvent> startTaskEvents = new SimulationEventPool<>(StartTaskEvent::new);
+    private final SimulationEventPool<TaskSuccessEvent> taskSuccessEvents = new SimulationEventPool<>(TaskSuccessEvent::new);
+    private final SimulationEventPool<MachineFailEvent> machineFailEvents = new SimulationEventPool<>(MachineFailEvent::new);
+    private final SimulationEventPool<TaskTerminatedEvent> taskTerminatedEvents =
+            new SimulationEventPool<>(TaskTerminatedEvent::new);
+    private final double cores;
+    private final long memory;
+    /** tasks started on the machine and not ended yet */
+    private final List<Task> runningTasks = new ArrayList<>();
+    private double allocatedCores;
+    private long allocatedMemory;
+    private IntRecord runningMachines, runningStragglers, failedMachines, activeMachines, runningContainers;
+    private DoubleRecord dataTransfer, usedCores;
+    private LongRecord usedMemory;
+    private double computationSpeed;
+    /** computation time of the last finished task relative to its nominal duration */
+    private double observedSlowdown = Double.NaN;
+    private boolean isStraggler;
+    private boolean alive = true;
 
     Machine(Cluster cluster, int id, ClusterConfig configuration) {
         super(MapReduceExecutionOrder.MACHINE);
@@ -28,41 +47,73 @@ public class Machine extends Simulatable<Machine.EventType> {
         this.id = id;
         this.configuration = configuration;
         hardDrive = new HardDrive(configuration);
-        double computationSpeed = configuration.computationSpeed.get();
-
-        Double stragglerProbability = configuration.stragglerProbability.get();
-        isStraggler = (stragglerProbability != null && random.nextDouble() < stragglerProbability);
-        if (isStraggler) {
-            computationSpeed *= configuration.stragglingFactor.get();
-        }
-        this.computationSpeed = computationSpeed;
+        cores = configuration.machineCores.get(cluster.getConfigurationRandom());
+        memory = configuration.machineMemory.get(cluster.getConfigurationRandom());
     }
 
     public int getId() {
         return id;
     }
 
+    public int getRack() {
+        return id / configuration.machinesPerRack.get();
+    }
+
     public HardDrive getHardDrive() {
         return hardDrive;
     }
 
-    public void startTask(long networkDelay, double taskDuration, Consumer<Task> taskConsumer,
-                          Runnable onSuccess) {
+    /** the caller checks that the machine has room for the task */
+    public void startTask(long networkDelay, double taskDuration, double cores, long memory,
+                          Consumer<Task> taskConsumer, Runnable onSuccess) {
         if (! isAlive()) {
             throw new UnsupportedOperationException("machine is not alive anymore");
-        } else if (isBusy()) {
-            throw new UnsupportedOperationException("machine is busy");
+        } else if (! hasRoomFor(cores, memory)) {
+            throw new UnsupportedOperationException("machine has no room for the task");
         }
 
-        taskDuration *= computationSpeed;
+        allocate(cores, memory);
+        invokeEvent(networkDelay, startTaskEvents.obtain().set((long) (taskDuration * computationSpeed),
+                (long) taskDuration, cores, memory, taskConsumer, onSuccess));
+    }
 
-        invokeEvent(networkDelay, new StartTaskEvent((long) taskDuration, taskConsumer, onSuccess));
+    public void startTask(long networkDelay, double taskDuration, Consumer<Task> taskConsumer,
+                          Runnable onSuccess) {
+        startTask(networkDelay, taskDuration, cores, memory, taskConsumer, onSuccess);
     }
 
     public void startTask(long networkDelay, double taskDuration, Runnable onSuccess) {
         startTask(networkDelay, taskDuration, null, onSuccess);
     }
 
+    public boolean hasRoomFor(double cores, long memory) {
+        return alive && allocatedCores + cores <= this.cores + 1e-9 && allocatedMemory + memory <= this.memory;
+    }
+
+    public double getCores() {
+        return cores;
+    }
+
+    public long getMemory() {
+        return memory;
+    }
+
+    public int getRunningTaskCount() {
+        return runningTasks.size();
+    }
+
+    private void allocate(double cores, long memory) {
+        allocatedCores += cores;
+        allocatedMemory += memory;
+        cluster.onAllocationChanged(this, false);
+    }
+
+    private void release(double cores, long memory) {
+        allocatedCores = Math.max(allocatedCores - cores, 0);
+        allocatedMemory -= memory;
+        cluster.onAllocationChanged(this, true);
+    }
+
     @Override
     protected void startSimulation() {
 
@@ -73,48 +124,106 @@ public class Machine extends Simulatable<Machine.EventType> {
         switch (event.getType()) {
             case START:
                 StartTaskEvent startEvent = (StartTaskEvent) event;
-                boolean fail = random.nextDouble() <= configuration.machineFailProbability.get();
-                Task task = new Task(getTimeStamp() + startEvent.taskDuration);
+                boolean fail = getRandom().nextDouble() <= configuration.machineFailProbability.get(getRandom());
+                Task task = new Task(getTimeStamp() + startEvent.taskDuration, startEvent.nominalDuration,
+                        startEvent.cores, startEvent.memory);
                 if (startEvent.taskConsumer != null) {
                     startEvent.taskConsumer.accept(task);
                 }
-                if (busy) {
-                    task.onBusy();
+                if (! alive) {
+                    // the machine failed after the task was assigned to it
+                    task.onNotInvoked();
                     return;
                 }
-                setBusy(true);
-                updateRecordValue(RecordType.RUNNING_MACHINES, i -> i + 1, 0);
-                if (isStraggler) updateRecordValue(RecordType.RUNNING_STRAGGLERS, i -> i + 1, 0);
-                if (fail) {
-                    invokeEvent((long) (random.nextDouble() * startEvent.taskDuration), new MachineFailEvent(task));
+                onTaskRunning(task, true);
+                if (task.preparation == null) {
+                    compute(task, startEvent.taskDuration, fail, startEvent.onSuccess);
                 } else {
-                    invokeEvent(startEvent.taskDuration, new TaskSuccessEvent(startEvent.onSuccess, task));
+                    // the pooled start event is recycled before the preparation ends
+                    long taskDuration = startEvent.taskDuration;
+                    Runnable onSuccess = startEvent.onSuccess;
+                    task.preparation.accept(() -> {
+                        if (task.running) {
+                            task.timestampEnd = getTimeStamp() + taskDuration;
+                            compute(task, taskDuration, fail, onSuccess);
+                        }
+                    });
                 }
                 break;
             case MACHINE_FAIL:
                 alive = false;
                 cluster.onMachineFailed(this);
-                updateRecordValue(RecordType.FAILED_MACHINES, i -> i + 1, 0);
-                updateRecordValue(RecordType.RUNNING_MACHINES, i -> i - 1, 0);
-                if (isStraggler) updateRecordValue(RecordType.RUNNING_STRAGGLERS, i -> i - 1, 0);
-                updateRecordValue(RecordType.ACTIVE_MACHINES, i -> i - 1, 0);
-                ((MachineFailEvent) event).task.onMachineFail();
+                failedMachines.add(1);
+                activeMachines.add(- 1);
+                Task failedTask = ((MachineFailEvent) event).task;
+                for (Task runningTask : new ArrayList<>(runningTasks)) {
+                    onTaskRunning(runningTask, false);
+                    // terminated tasks already ended, they only wait for their resources to be released
+                    if (runningTask.running) {
+                        if (runningTask != failedTask) {
+                            runningTask.destroyBoundEvents();
+                        }
+                        runningTask.onMachineFail();
+                    }
+                }
+                allocatedCores = 0;
+                allocatedMemory = 0;
                 break;
             case TASK_SUCCESS:
-                updateRecordValue(RecordType.RUNNING_MACHINES, i -> i - 1, 0);
-                if (isStraggler) updateRecordValue(RecordType.RUNNING_STRAGGLERS, i -> i - 1, 0);
-                setBusy(false);
+                Task succeededTask = ((TaskSuccessEvent) event).task;
+                onTaskRunning(succeededTask, false);
+                observeSlowdown(succeededTask);
+                release(succeededTask.cores, succeededTask.memory);
                 ((TaskSuccessEvent) event).onSuccess.run();
-                ((TaskSuccessEvent) event).task.onSuccess();
+                succeededTask.onSuccess();
                 break;
             case TASK_TERMINATED:
-                updateRecordValue(RecordType.RUNNING_MACHINES, i -> i - 1, 0);
-                if (isStraggler) updateRecordValue(RecordType.RUNNING_STRAGGLERS, i -> i - 1, 0);
-                setBusy(false);
+                Task terminatedTask = ((TaskTerminatedEvent) event).task;
+                if (runningTasks.contains(terminatedTask)) {
+                    onTaskRunning(terminatedTask, false);
+                    release(terminatedTask.cores, terminatedTask.memory);
+                }
                 break;
         }
     }
 
+    private void onTaskRunning(Task task, boolean running) {
+        int delta = running ? 1 : - 1;
+        if (running) {
+            runningTasks.add(task);
+        } else {
+            runningTasks.remove(task);
+        }
+        if (runningTasks.size() == (running ? 1 : 0)) {
+            runningMachines.add(delta);
+            if (isStraggler) runningStragglers.add(delta);
+        }
+        runningContainers.add(delta);
+        usedCores.add(delta * task.cores);
+        usedMemory.add(delta * task.memory);
+    }
+
+    private void compute(Task task, long taskDuration, boolean fail, Runnable onSuccess) {
+        task.computeStart = getTimeStamp();
+        task.computeDuration = taskDuration;
+        if (fail) {
+            invokeEvent((long) (getRandom().nextDouble() * taskDuration), machineFailEvents.obtain().set(task));
+        } else {
+            invokeEvent(taskDuration, taskSuccessEvents.obtain().set(onSuccess, task));
+        }
+    }
+
+    private void observeSlowdown(Task task) {
+        if (task.nominalDuration > 0) {
+            observedSlowdown = (double) (getTimeStamp() - task.computeStart) / task.nominalDuration;
+            cluster.onSlowdownObserved();
+        }
+    }
+
+    public double getObservedSlowdown() {
+        return observedSlowdown;
+    }
+
     @Override
     protected Simulatable<EventType> newInitialInstance() {
         return new Machine(cluster, id, configuration);
@@ -122,16 +231,28 @@ public class Machine extends Simulatable<Machine.EventType> {
 
     @Override
     public void onSimulationStart() {
-        updateRecordValue(RecordType.ACTIVE_MACHINES, i -> i + 1, 0);
-    }
+        double computationSpeed = configuration.computationSpeed.get(getRandom());
 
-    public boolean isBusy() {
-        return busy;
+        Double stragglerProbability = configuration.stragglerProbability.get(getRandom());
+        isStraggler = (stragglerProbability != null && getRandom().nextDouble() < stragglerProbability);
+        if (isStraggler) {
+            computationSpeed *= configuration.stragglingFactor.get(getRandom());
+        }
+        this.computationSpeed = computationSpeed;
+
+        runningMachines = getIntRecord(RecordType.RUNNING_MACHINES);
+        runningStragglers = getIntRecord(RecordType.RUNNING_STRAGGLERS);
+        failedMachines = getIntRecord(RecordType.FAILED_MACHINES);
+        activeMachines = getIntRecord(RecordType.ACTIVE_MACHINES);
+        dataTransfer = getDoubleRecord(RecordType.DATA_TRANSFER);
+        runningContainers = getIntRecord(RecordType.RUNNING_CONTAINERS);
+        usedCores = getDoubleRecord(RecordType.USED_CORES);
+        usedMemory = getLongRecord(RecordType.USED_MEMORY);
+        activeMachines.add(1);
     }
 
-    private void setBusy(boolean b) {
-        busy = b;
-        cluster.onBusyStateChanged(this);
+    public boolean isBusy() {
+        return allocatedCores >= cores - 1e-9 || allocatedMemory >= memory;
     }
 
     public boolean isAlive() {
@@ -140,37 +261,68 @@ public class Machine extends Simulatable<Machine.EventType> {
 
     private static class TaskSuccessEvent extends SimulationEvent<EventType> {
 
-        private final Runnable onSuccess;
-        private final Task task;
+        private Runnable onSuccess;
+        private Task task;
 
-        private TaskSuccessEvent(Runnable onSuccess, Task task) {
+        private TaskSuccessEvent() {
             super(EventType.TASK_SUCCESS);
+        }
+
+        private TaskSuccessEvent set(Runnable onSuccess, Task task) {
             this.onSuccess = onSuccess;
             this.task = task;
             task.bindEvent(this);
+            return this;
         }
     }
 
     private static class MachineFailEvent extends SimulationEvent<EventType> {
-        private final Task task;
+        private Task task;
 
-        private MachineFailEvent(Task task) {
+        private MachineFailEvent() {
             super(EventType.MACHINE_FAIL);
+        }
+
+        private MachineFailEvent set(Task task) {
             this.task = task;
             task.bindEvent(this);
+            return this;
+        }
+    }
+
+    private static class TaskTerminatedEvent extends SimulationEvent<EventType> {
+        private Task task;
+
+        private TaskTerminatedEvent() {
+            super(EventType.TASK_TERMINATED);
+        }
+
+        private TaskTerminatedEvent set(Task task) {
+            this.task = task;
+            return this;
         }
     }
 
     private static class StartTaskEvent extends SimulationEvent<EventType> {
-        private final long taskDuration;
-        private final Consumer<Task> taskConsumer;
-        private final Runnable onSuccess;
+        private long taskDuration, nominalDuration;
+        private double cores;
+        private long memory;
+        private Consumer<Task> taskConsumer;
+        private Runnable onSuccess;
 
-        private StartTaskEvent(long taskDuration, Consumer<Task> taskConsumer, Runnable onSuccess) {
+        private StartTaskEvent() {
             super(EventType.START);
+        }
+
+        private StartTaskEvent set(long taskDuration, long nominalDuration, double cores, long memory,
+                                   Consumer<Task> taskConsumer, Runnable onSuccess) {
             this.taskDuration = taskDuration;
+            this.nominalDuration = nominalDuration;
+            this.cores = cores;
+            this.memory = memory;
             this.taskConsumer = taskConsumer;
             this.onSuccess = onSuccess;
+            return this;
         }
 
     }
@@ -180,20 +332,31 @@ public class Machine extends Simulatable<Machine.EventType> {
     }
 
     public enum RecordType {
-        RUNNING_MACHINES, FAILED_MACHINES, DATA_TRANSFER, RUNNING_STRAGGLERS, ACTIVE_MACHINES
+        RUNNING_MACHINES, FAILED_MACHINES, DATA_TRANSFER, RUNNING_STRAGGLERS, ACTIVE_MACHINES, RUNNING_CONTAINERS,
+        USED_CORES, USED_MEMORY
     }
 
     public class Task {
 
-        private final long timestampEnd;
+        private long timestampEnd;
+        private final long timestampStart = getTimeStamp();
+        private final long nominalDuration;
+        private final double cores;
+        private final long memory;
+        private long computeStart = - 1, computeDuration;
         private final List<Consumer<Task>> onNotInvokedListeners = new ArrayList<>();
         private final List<Consumer<Task>> onEndListeners = new ArrayList<>();
         private final List<SimulationEvent<EventType>> boundEvents = new ArrayList<>();
         double dataRateDelta = 0;
-        private boolean running = true;
+        private Consumer<Runnable> preparation;
+        private final List<Network.Flow> flows = new ArrayList<>();
+        private boolean running = true, succeeded;
 
-        private Task(long timestampEnd) {
+        private Task(long timestampEnd, long nominalDuration, double cores, long memory) {
             this.timestampEnd = timestampEnd;
+            this.nominalDuration = nominalDuration;
+            this.cores = cores;
+            this.memory = memory;
         }
 
         public Machine getMachine() {
@@ -201,7 +364,7 @@ public class Machine extends Simulatable<Machine.EventType> {
         }
 
         public Task action(long delay, Consumer<Task> action) {
-            invokeAction(delay, () -> action.accept(this));
+            invokeAction(delay, action, this);
             return this;
         }
 
@@ -209,17 +372,78 @@ public class Machine extends Simulatable<Machine.EventType> {
             if (running) {
                 double delta = (1.0 * size / duration);
                 dataRateDelta += delta;
-                updateRecordValue(RecordType.DATA_TRANSFER, i -> i + delta, 0.0);
+                dataTransfer.add(delta);
             }
         }
 
+        /** the task computes for its duration only once {@code preparation} runs the passed callback */
+        public Task prepare(Consumer<Runnable> preparation) {
+            this.preparation = preparation;
+            return this;
+        }
+
+        public Task readRemoteData(Machine source, long size) {
+            return prepare(ready -> track(cluster.getNetwork().read(source, Machine.this, size, ready)));
+        }
+
+        public Task readRemoteData(List<Machine> sources, long size) {
+            return prepare(ready -> {
+                int[] pendingSources = {sources.size()};
+                for (Machine source : sources) {
+                    track(cluster.getNetwork().read(source, Machine.this, size, () -> {
+                        if (-- pendingSources[0] == 0) {
+                            ready.run();
+                        }
+                    }));
+                }
+            });
+        }
+
+        public Task readLocalData(long size) {
+            return readRemoteData(Machine.this, size);
+        }
+
+        public void transfer(Machine source, long size, Runnable onDone) {
+            track(cluster.getNetwork().transfer(source, Machine.this, size, onDone));
+        }
+
+        public void transferFromRack(int rack, long size, Runnable onDone) {
+            track(cluster.getNetwork().transferFromRack(rack, Machine.this, size, onDone));
+        }
+
+        private void track(Network.Flow flow) {
+            flows.removeIf(Network.Flow::isDone);
+            flows.add(flow);
+        }
+
         public long remainingTime() {
             return timestampEnd - getTimeStamp();
         }
 
+        public long getRunningTime() {
+            return getTimeStamp() - timestampStart;
+        }
+
+        public double getProgress() {
+            if (computeStart < 0) {
+                return 0;
+            }
+            return computeDuration == 0 ? 1 : Math.min(1, (double) (getTimeStamp() - computeStart) / computeDuration);
+        }
+
+        public boolean hasSucceeded() {
+            return succeeded;
+        }
+
         private void endTask() {
             running = false;
-            updateRecordValue(RecordType.DATA_TRANSFER, i -> i - dataRateDelta, 0.0);
+            // bound events are pooled, they must not be referenced once the task ended
+            boundEvents.clear();
+            dataTransfer.add(- dataRateDelta);
+            for (Network.Flow flow : flows) {
+                flow.cancel();
+            }
+            flows.clear();
             for (Consumer<Task> listener : onEndListeners) {
                 listener.accept(this);
             }
@@ -230,10 +454,11 @@ public class Machine extends Simulatable<Machine.EventType> {
         }
 
         private void onSuccess() {
+            succeeded = true;
             endTask();
         }
 
-        private void onBusy() {
+        private void onNotInvoked() {
             for (Consumer<Task> listener : onNotInvokedListeners) {
                 listener.accept(this);
             }
@@ -254,12 +479,16 @@ public class Machine extends Simulatable<Machine.EventType> {
             boundEvents.add(event);
         }
 
-        public void terminate() {
-            endTask();
+        private void destroyBoundEvents() {
             for (SimulationEvent<EventType> boundEvent : boundEvents) {
                 boundEvent.destroy();
             }
-            invokeEvent(0, new SimulationEvent<>(EventType.TASK_TERMINATED));
+        }
+
+        public void terminate() {
+            destroyBoundEvents();
+            endTask();
+            invokeEvent(0, taskTerminatedEvents.obtain().set(this));
         }
     }
 }
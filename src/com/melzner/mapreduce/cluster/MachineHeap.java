@@ -0,0 +1,157 @@
+package com.melzner.mapreduce.cluster;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.function.Predicate;
+
+/** Binary min heap of the alive machines by drive usage, ties are broken by random keys. */
+public final class MachineHeap {
+
+    /** random picks before {@link #getRandom(SplittableRandom, Predicate)} scans the heap */
+    private static final int RANDOM_TRIES = 16;
+
+    private final Machine[] heap;
+    /** index in the heap by machine id, - 1 for machines not in the heap */
+    private final int[] positions;
+    /** tie breaking key by machine id, drawn anew on every change so equal machines don't always pair up */
+    private final long[] ties;
+    private final SplittableRandom random;
+    private int size;
+
+    MachineHeap(int machineCount, SplittableRandom random) {
+        heap = new Machine[machineCount];
+        positions = new int[machineCount];
+        Arrays.fill(positions, - 1);
+        ties = new long[machineCount];
+        this.random = random;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(Machine machine) {
+        return positions[machine.getId()] >= 0;
+    }
+
+    public Machine get(int index) {
+        return heap[index];
+    }
+
+    void add(Machine machine) {
+        if (contains(machine)) {
+            throw new IllegalArgumentException("machine " + machine.getId() + " is in the heap already");
+        }
+        heap[size] = machine;
+        positions[machine.getId()] = size;
+        ties[machine.getId()] = random.nextLong();
+        siftUp(size++);
+    }
+
+    boolean remove(Machine machine) {
+        int index = positions[machine.getId()];
+        if (index < 0) {
+            return false;
+        }
+        positions[machine.getId()] = - 1;
+        Machine last = heap[-- size];
+        heap[size] = null;
+        if (index < size) {
+            heap[index] = last;
+            positions[last.getId()] = index;
+            siftDown(index);
+            siftUp(positions[last.getId()]);
+        }
+        return true;
+    }
+
+    void update(Machine machine) {
+        int index = positions[machine.getId()];
+        if (index >= 0) {
+            ties[machine.getId()] = random.nextLong();
+            siftUp(index);
+            siftDown(positions[machine.getId()]);
+        }
+    }
+
+    public Machine getLeastUsed(Predicate<Machine> accepted) {
+        if (size == 0) {
+            return null;
+        } else if (accepted.test(heap[0])) {
+            return heap[0];
+        }
+        PriorityQueue<Integer> candidates = new PriorityQueue<>((a, b) -> compare(heap[a], heap[b]));
+        candidates.add(0);
+        while (! candidates.isEmpty()) {
+            int index = candidates.poll();
+            if (accepted.test(heap[index])) {
+                return heap[index];
+            }
+            for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                candidates.add(child);
+            }
+        }
+        return null;
+    }
+
+    public Machine getRandom(SplittableRandom random, Predicate<Machine> accepted) {
+        if (size == 0) {
+            return null;
+        }
+        for (int i = 0; i < RANDOM_TRIES; i++) {
+            Machine machine = heap[random.nextInt(size)];
+            if (accepted.test(machine)) {
+                return machine;
+            }
+        }
+        // few machines are accepted, scan from a random start instead
+        int start = random.nextInt(size);
+        for (int i = 0; i < size; i++) {
+            Machine machine = heap[(start + i) % size];
+            if (accepted.test(machine)) {
+                return machine;
+            }
+        }
+        return null;
+    }
+
+    int compare(Machine a, Machine b) {
+        int usage = Long.compare(a.hardDrive.driveUsage, b.hardDrive.driveUsage);
+        return usage != 0 ? usage : Long.compare(ties[a.getId()], ties[b.getId()]);
+    }
+
+    private void siftUp(int index) {
+        Machine machine = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (compare(machine, heap[parent]) >= 0) {
+                break;
+            }
+            move(heap[parent], index);
+            index = parent;
+        }
+        move(machine, index);
+    }
+
+    private void siftDown(int index) {
+        Machine machine = heap[index];
+        while (2 * index + 1 < size) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && compare(heap[child + 1], heap[child]) < 0) {
+                child++;
+            }
+            if (compare(machine, heap[child]) <= 0) {
+                break;
+            }
+            move(heap[child], index);
+            index = child;
+        }
+        move(machine, index);
+    }
+
+    private void move(Machine machine, int index) {
+        heap[index] = machine;
+        positions[machine.getId()] = index;
+    }
+}
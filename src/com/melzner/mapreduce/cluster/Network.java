@@ -0,0 +1,626 @@
+package com.melzner.mapreduce.cluster;
+
+import com.melzner.mapreduce.computation.MapReduceExecutionOrder;
+import com.melzner.mapreduce.scenario.ClusterConfig;
+import com.melzner.mapreduce.simulation.Cancellable;
+import com.melzner.mapreduce.simulation.DoubleRecord;
+import com.melzner.mapreduce.simulation.IntRecord;
+import com.melzner.mapreduce.simulation.Simulatable;
+import com.melzner.mapreduce.simulation.SimulationEvent;
+import com.melzner.mapreduce.simulation.SimulationEventType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Two level tree topology, its links, disks and re-replication throttles are shared max-min fairly by the flows. */
+public class Network extends Simulatable<SimulationEventType> {
+
+    /** flows with less than a byte left are done, rounding the completion time up leaves at most that */
+    private static final double DONE_THRESHOLD = 1;
+    /** relative slack of the bottleneck checks, rates summed in another order differ in the last bits */
+    private static final double RATE_TOLERANCE = 1e-9;
+
+    private final Cluster cluster;
+    private final ClusterConfig configuration;
+    private final int machineCount, rackCount;
+    /** bytes per nanosecond of the machine, rack and core links, then of the disks and re-replication throttles */
+    private final double[] capacities;
+    private final int coreLink;
+    /** index of the first disk link or - 1 if disks are unlimited */
+    private final int diskLinks;
+    /** index of the first throttle per machine and of the cluster's throttle, - 1 if unlimited */
+    private final int reReplicationLinks, reReplicationClusterLink;
+    private final List<Flow> flows = new ArrayList<>();
+    /** flows crossing each link, the sum of their rates and the links whose flows changed since the last update */
+    private final Flow[][] linkMembers;
+    private final int[] linkMemberCounts;
+    private final double[] linkLoads;
+    private final int[] dirtyLinks;
+    private int dirtyLinkCount;
+    private final boolean[] dirty;
+    /** scratch space of the rate computation: capacity left, flows without rate and flows crossing each link */
+    private final double[] remainingCapacities;
+    private final int[] unfrozenFlows;
+    private final int[] usedLinks;
+    private final int[] linkFlowsStart, linkFlowsEnd;
+    private Flow[] linkFlows = new Flow[16];
+    /** flows started since the last update, the flows computed and the links to check in an update round */
+    private final List<Flow> started = new ArrayList<>();
+    private final List<Flow> recomputed = new ArrayList<>();
+    private final int[] changedLinks, changedRounds;
+    private final double[] maxRates;
+    private final int[] maxRateRounds;
+    private int round;
+    /** binary min heap of the links with flows without rate by fair share and the position of every link in it */
+    private final double[] heapShares;
+    private final int[] heapLinks, heapPositions;
+    private int heapSize;
+    private Flow[] completions = new Flow[16];
+    private int completionCount;
+    /** fetched on first use, transfers may start before this simulatable's simulation start */
+    private IntRecord activeFlows;
+    private DoubleRecord transferRate;
+    private double totalRate;
+    private boolean updatePending;
+    private Cancellable nextCompletion;
+    private double scheduledCompletion = Double.NaN;
+
+    Network(Cluster cluster, ClusterConfig configuration) {
+        super(MapReduceExecutionOrder.NETWORK);
+        this.cluster = cluster;
+        this.configuration = configuration;
+        machineCount = configuration.machineCount.get();
+        int machinesPerRack = configuration.machinesPerRack.get();
+        rackCount = (machineCount + machinesPerRack - 1) / machinesPerRack;
+        boolean blockingCore = configuration.coreBandwidth.get() > 0;
+        coreLink = blockingCore ? 2 * machineCount + 2 * rackCount : - 1;
+        boolean limitedDisks = configuration.machineDiskBandwidth.get() > 0;
+        diskLinks = limitedDisks ? 2 * machineCount + 2 * rackCount + (blockingCore ? 1 : 0) : - 1;
+        int links = 2 * machineCount + 2 * rackCount + (blockingCore ? 1 : 0) + (limitedDisks ? machineCount : 0);
+        boolean throttledMachines = configuration.reReplicationBandwidth.get() > 0;
+        reReplicationLinks = throttledMachines ? links : - 1;
+        links += throttledMachines ? machineCount : 0;
+        boolean throttledCluster = configuration.reReplicationClusterBandwidth.get() > 0;
+        reReplicationClusterLink = throttledCluster ? links++ : - 1;
+        capacities = new double[links];
+        for (int i = 0; i < 2 * machineCount; i++) {
+            capacities[i] = configuration.machineBandwidth.get() / 1e9;
+        }
+        for (int i = 2 * machineCount; i < 2 * machineCount + 2 * rackCount; i++) {
+            capacities[i] = configuration.rackUplinkBandwidth.get() / 1e9;
+        }
+        if (blockingCore) {
+            capacities[coreLink] = configuration.coreBandwidth.get() / 1e9;
+        }
+        if (limitedDisks) {
+            Arrays.fill(capacities, diskLinks, diskLinks + machineCount, configuration.machineDiskBandwidth.get() / 1e9);
+        }
+        if (throttledMachines) {
+            Arrays.fill(capacities, reReplicationLinks, reReplicationLinks + machineCount,
+                    configuration.reReplicationBandwidth.get() / 1e9);
+        }
+        if (throttledCluster) {
+            capacities[reReplicationClusterLink] = configuration.reReplicationClusterBandwidth.get() / 1e9;
+        }
+        linkMembers = new Flow[capacities.length][];
+        linkMemberCounts = new int[capacities.length];
+        linkLoads = new double[capacities.length];
+        dirtyLinks = new int[capacities.length];
+        dirty = new boolean[capacities.length];
+        changedLinks = new int[capacities.length];
+        changedRounds = new int[capacities.length];
+        maxRates = new double[capacities.length];
+        maxRateRounds = new int[capacities.length];
+        heapShares = new double[capacities.length];
+        heapLinks = new int[capacities.length];
+        heapPositions = new int[capacities.length];
+        remainingCapacities = new double[capacities.length];
+        unfrozenFlows = new int[capacities.length];
+        usedLinks = new int[capacities.length];
+        linkFlowsStart = new int[capacities.length];
+        linkFlowsEnd = new int[capacities.length];
+    }
+
+    public Flow transfer(Machine source, Machine destination, long size, Runnable onDone) {
+        return start(source == destination ? new int[0] : getPath(source.getRack(), source.getId(), destination),
+                size, onDone);
+    }
+
+    public Flow read(Machine holder, Machine reader, long size, Runnable onDone) {
+        if (diskLinks < 0) {
+            return transfer(holder, reader, size, onDone);
+        }
+        int[] path = holder == reader ? new int[0] : getPath(holder.getRack(), holder.getId(), reader);
+        int[] diskPath = new int[path.length + 1];
+        diskPath[0] = diskLinks + holder.getId();
+        System.arraycopy(path, 0, diskPath, 1, path.length);
+        return start(diskPath, size, onDone);
+    }
+
+    public Flow reReplicate(Machine source, Machine destination, long size, Runnable onDone) {
+        int[] path = getPath(source.getRack(), source.getId(), destination);
+        int throttles = (diskLinks < 0 ? 0 : 1) + (reReplicationLinks < 0 ? 0 : 1) + (reReplicationClusterLink < 0 ? 0 : 1);
+        int[] throttledPath = new int[path.length + throttles];
+        int i = 0;
+        if (diskLinks >= 0) {
+            throttledPath[i++] = diskLinks + source.getId();
+        }
+        if (reReplicationLinks >= 0) {
+            throttledPath[i++] = reReplicationLinks + source.getId();
+        }
+        if (reReplicationClusterLink >= 0) {
+            throttledPath[i++] = reReplicationClusterLink;
+        }
+        System.arraycopy(path, 0, throttledPath, i, path.length);
+        return start(throttledPath, size, onDone);
+    }
+
+    /** only the rack links limit a flow of data spread over the machines of {@code rack} */
+    public Flow transferFromRack(int rack, Machine destination, long size, Runnable onDone) {
+        return start(getPath(rack, - 1, destination), size, onDone);
+    }
+
+    private Flow start(int[] path, long size, Runnable onDone) {
+        Flow flow = new Flow(path, size, onDone);
+        if (path.length == 0 || size <= 0) {
+            flow.done = true;
+            invokeAction(0, onDone);
+            return flow;
+        }
+        flow.updated = getTimeStamp();
+        flow.index = flows.size();
+        flows.add(flow);
+        for (int i = 0; i < path.length; i++) {
+            int link = path[i];
+            if (linkMembers[link] == null) {
+                linkMembers[link] = new Flow[4];
+            } else if (linkMemberCounts[link] == linkMembers[link].length) {
+                linkMembers[link] = Arrays.copyOf(linkMembers[link], 2 * linkMemberCounts[link]);
+            }
+            flow.positions[i] = linkMemberCounts[link];
+            linkMembers[link][linkMemberCounts[link]++] = flow;
+            markDirty(link);
+        }
+        addCompletion(flow);
+        started.add(flow);
+        getActiveFlows().add(1);
+        requestUpdate();
+        return flow;
+    }
+
+    /** @param sourceMachine - 1 if the link of the sending machine isn't part of the path */
+    private int[] getPath(int sourceRack, int sourceMachine, Machine destination) {
+        int destinationDownlink = machineCount + destination.getId();
+        int[] path;
+        if (sourceRack == destination.getRack()) {
+            path = new int[]{destinationDownlink};
+        } else {
+            int rackUplink = 2 * machineCount + sourceRack;
+            int rackDownlink = 2 * machineCount + rackCount + destination.getRack();
+            path = coreLink < 0 ? new int[]{rackUplink, rackDownlink, destinationDownlink}
+                    : new int[]{rackUplink, coreLink, rackDownlink, destinationDownlink};
+        }
+        if (sourceMachine < 0) {
+            return path;
+        }
+        int[] machinePath = new int[path.length + 1];
+        machinePath[0] = sourceMachine;
+        System.arraycopy(path, 0, machinePath, 1, path.length);
+        return machinePath;
+    }
+
+    private void remove(Flow flow) {
+        Flow last = flows.remove(flows.size() - 1);
+        if (last != flow) {
+            flows.set(flow.index, last);
+            last.index = flow.index;
+        }
+        for (int i = 0; i < flow.path.length; i++) {
+            int link = flow.path[i];
+            Flow[] members = linkMembers[link];
+            Flow moved = members[--linkMemberCounts[link]];
+            members[linkMemberCounts[link]] = null;
+            if (moved != flow) {
+                members[flow.positions[i]] = moved;
+                for (int j = 0; j < moved.path.length; j++) {
+                    if (moved.path[j] == link) {
+                        moved.positions[j] = flow.positions[i];
+                    }
+                }
+            }
+            linkLoads[link] -= flow.rate;
+            markDirty(link);
+        }
+        totalRate -= flow.rate;
+        removeCompletion(flow);
+        flow.done = true;
+    }
+
+    private void markDirty(int link) {
+        if (! dirty[link]) {
+            dirty[link] = true;
+            dirtyLinks[dirtyLinkCount++] = link;
+        }
+    }
+
+    /** recomputes the rates once all flows of the current timestamp started or ended */
+    private void requestUpdate() {
+        if (! updatePending) {
+            updatePending = true;
+            invokeAction(0, this::updateRates);
+        }
+    }
+
+    /** kept flows join the computed ones while they lack a bottleneck, this ends with the rates of a complete refill */
+    private void updateRates() {
+        updatePending = false;
+        round++;
+        int changedLinkCount = 0;
+        for (int i = 0; i < dirtyLinkCount; i++) {
+            dirty[dirtyLinks[i]] = false;
+            changedLinkCount = markChanged(dirtyLinks[i], changedLinkCount);
+        }
+        dirtyLinkCount = 0;
+        for (Flow flow : started) {
+            if (! flow.done) {
+                include(flow);
+            }
+        }
+        started.clear();
+        int firstAdded = 0;
+        while (true) {
+            changedLinkCount = fill(changedLinkCount, firstAdded);
+            round++;
+            int size = recomputed.size();
+            for (int i = 0; i < changedLinkCount; i++) {
+                int link = changedLinks[i];
+                for (int j = 0; j < linkMemberCounts[link]; j++) {
+                    Flow flow = linkMembers[link][j];
+                    if (flow.checked != round) {
+                        flow.checked = round;
+                        if (! hasBottleneck(flow)) {
+                            if (flow.included == round - 1) {
+                                includeFaster(flow);
+                            } else {
+                                include(flow);
+                            }
+                        }
+                    }
+                }
+            }
+            if (recomputed.size() == size) {
+                break;
+            }
+            // compute the extended set, its flows are marked as included for the current round
+            for (int i = 0; i < size; i++) {
+                recomputed.get(i).included = round;
+            }
+            firstAdded = size;
+            changedLinkCount = 0;
+        }
+        for (Flow flow : recomputed) {
+            updateCompletion(flow);
+        }
+        recomputed.clear();
+        if (flows.isEmpty()) {
+            totalRate = 0;
+        }
+        getTransferRate().set(totalRate);
+        scheduleNextCompletion();
+    }
+
+    private int markChanged(int link, int changedLinkCount) {
+        if (changedRounds[link] != round) {
+            changedRounds[link] = round;
+            changedLinks[changedLinkCount++] = link;
+        }
+        return changedLinkCount;
+    }
+
+    private void include(Flow flow) {
+        if (flow.included != round) {
+            flow.included = round;
+            recomputed.add(flow);
+        }
+    }
+
+    private void includeFaster(Flow flow) {
+        for (int link : flow.path) {
+            for (int j = 0; j < linkMemberCounts[link]; j++) {
+                Flow other = linkMembers[link][j];
+                if (other.included < round - 1 && other.rate > flow.rate * (1 + RATE_TOLERANCE)) {
+                    include(other);
+                }
+            }
+        }
+    }
+
+    private boolean hasBottleneck(Flow flow) {
+        for (int link : flow.path) {
+            if (linkLoads[link] >= capacities[link] * (1 - RATE_TOLERANCE)
+                    && flow.rate >= maxRate(link) * (1 - RATE_TOLERANCE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double maxRate(int link) {
+        if (maxRateRounds[link] != round) {
+            maxRateRounds[link] = round;
+            double max = 0;
+            for (int j = 0; j < linkMemberCounts[link]; j++) {
+                max = Math.max(max, linkMembers[link][j].rate);
+            }
+            maxRates[link] = max;
+        }
+        return maxRates[link];
+    }
+
+    /** progressive filling of the computed flows on the capacity the kept flows leave, links in a heap by share */
+    private int fill(int changedLinkCount, int firstAdded) {
+        long now = getTimeStamp();
+        for (Flow flow : recomputed) {
+            flow.remaining -= flow.rate * (now - flow.updated);
+            flow.updated = now;
+            totalRate -= flow.rate;
+            for (int link : flow.path) {
+                linkLoads[link] -= flow.rate;
+            }
+            flow.previousRate = flow.rate;
+            flow.rate = - 1;
+        }
+        int usedLinkCount = 0;
+        int crossings = 0;
+        for (Flow flow : recomputed) {
+            for (int link : flow.path) {
+                if (unfrozenFlows[link]++ == 0) {
+                    remainingCapacities[link] = Math.max(capacities[link] - linkLoads[link], 0);
+                    usedLinks[usedLinkCount++] = link;
+                }
+            }
+            crossings += flow.path.length;
+        }
+        if (linkFlows.length < crossings) {
+            linkFlows = new Flow[Math.max(crossings, 2 * linkFlows.length)];
+        }
+        int start = 0;
+        for (int i = 0; i < usedLinkCount; i++) {
+            int link = usedLinks[i];
+            linkFlowsStart[link] = linkFlowsEnd[link] = start;
+            start += unfrozenFlows[link];
+            siftLink(heapSize++, link, remainingCapacities[link] / unfrozenFlows[link]);
+        }
+        for (Flow flow : recomputed) {
+            for (int link : flow.path) {
+                linkFlows[linkFlowsEnd[link]++] = flow;
+            }
+        }
+        while (heapSize > 0) {
+            int link = heapLinks[0];
+            double share = heapShares[0];
+            removeLink(0);
+            for (int i = linkFlowsStart[link]; i < linkFlowsEnd[link]; i++) {
+                Flow flow = linkFlows[i];
+                if (flow.rate < 0) {
+                    flow.rate = share;
+                    totalRate += share;
+                    for (int other : flow.path) {
+                        remainingCapacities[other] -= share;
+                        linkLoads[other] += share;
+                        if (--unfrozenFlows[other] > 0 && other != link) {
+                            siftLink(heapPositions[other], other, remainingCapacities[other] / unfrozenFlows[other]);
+                        } else if (other != link) {
+                            removeLink(heapPositions[other]);
+                        }
+                    }
+                }
+            }
+        }
+        Arrays.fill(linkFlows, 0, crossings, null);
+        for (int i = 0; i < recomputed.size(); i++) {
+            Flow flow = recomputed.get(i);
+            if (i >= firstAdded
+                    || Math.abs(flow.rate - flow.previousRate) > RATE_TOLERANCE * Math.max(flow.rate, flow.previousRate)) {
+                for (int link : flow.path) {
+                    changedLinkCount = markChanged(link, changedLinkCount);
+                }
+            }
+        }
+        return changedLinkCount;
+    }
+
+    private void siftLink(int i, int link, double share) {
+        while (i > 0 && heapShares[(i - 1) / 2] > share) {
+            moveLink((i - 1) / 2, i);
+            i = (i - 1) / 2;
+        }
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heapShares[child + 1] < heapShares[child]) {
+                child++;
+            }
+            if (heapShares[child] >= share) {
+                break;
+            }
+            moveLink(child, i);
+            i = child;
+        }
+        heapLinks[i] = link;
+        heapShares[i] = share;
+        heapPositions[link] = i;
+    }
+
+    private void moveLink(int from, int to) {
+        heapLinks[to] = heapLinks[from];
+        heapShares[to] = heapShares[from];
+        heapPositions[heapLinks[to]] = to;
+    }
+
+    private void removeLink(int i) {
+        heapSize--;
+        if (i < heapSize) {
+            siftLink(i, heapLinks[heapSize], heapShares[heapSize]);
+        }
+    }
+
+    private void addCompletion(Flow flow) {
+        if (completionCount == completions.length) {
+            completions = Arrays.copyOf(completions, 2 * completionCount);
+        }
+        flow.completionIndex = completionCount++;
+        completions[flow.completionIndex] = flow;
+        updateCompletion(flow);
+    }
+
+    private void removeCompletion(Flow flow) {
+        Flow last = completions[--completionCount];
+        completions[completionCount] = null;
+        if (last != flow) {
+            last.completionIndex = flow.completionIndex;
+            completions[last.completionIndex] = last;
+            siftCompletion(last);
+        }
+    }
+
+    private void updateCompletion(Flow flow) {
+        flow.completion = flow.rate > 0 ? flow.updated + flow.remaining / flow.rate : Double.POSITIVE_INFINITY;
+        siftCompletion(flow);
+    }
+
+    private void siftCompletion(Flow flow) {
+        int i = flow.completionIndex;
+        while (i > 0 && completions[(i - 1) / 2].completion > flow.completion) {
+            completions[i] = completions[(i - 1) / 2];
+            completions[i].completionIndex = i;
+            i = (i - 1) / 2;
+        }
+        while (2 * i + 1 < completionCount) {
+            int child = 2 * i + 1;
+            if (child + 1 < completionCount && completions[child + 1].completion < completions[child].completion) {
+                child++;
+            }
+            if (completions[child].completion >= flow.completion) {
+                break;
+            }
+            completions[i] = completions[child];
+            completions[i].completionIndex = i;
+            i = child;
+        }
+        completions[i] = flow;
+        flow.completionIndex = i;
+    }
+
+    private void scheduleNextCompletion() {
+        double earliest = completionCount == 0 ? Double.POSITIVE_INFINITY : completions[0].completion;
+        if (earliest == scheduledCompletion) {
+            return;
+        }
+        if (nextCompletion != null) {
+            nextCompletion.cancel();
+            nextCompletion = null;
+        }
+        scheduledCompletion = earliest;
+        if (earliest != Double.POSITIVE_INFINITY) {
+            nextCompletion = invokeCancellableAction((long) Math.ceil(Math.max(earliest - getTimeStamp(), 0)),
+                    this::completeFlows);
+        }
+    }
+
+    private void completeFlows() {
+        nextCompletion = null;
+        scheduledCompletion = Double.NaN;
+        long now = getTimeStamp();
+        List<Flow> done = new ArrayList<>();
+        while (completionCount > 0) {
+            Flow flow = completions[0];
+            if (flow.completion > now && flow.remaining - flow.rate * (now - flow.updated) >= DONE_THRESHOLD) {
+                break;
+            }
+            remove(flow);
+            done.add(flow);
+        }
+        getActiveFlows().add(- done.size());
+        scheduleNextCompletion();
+        requestUpdate();
+        for (Flow flow : done) {
+            flow.onDone.run();
+        }
+    }
+
+    private IntRecord getActiveFlows() {
+        if (activeFlows == null) {
+            activeFlows = getIntRecord(RecordType.ACTIVE_FLOWS);
+        }
+        return activeFlows;
+    }
+
+    private DoubleRecord getTransferRate() {
+        if (transferRate == null) {
+            transferRate = getDoubleRecord(RecordType.TRANSFER_RATE);
+        }
+        return transferRate;
+    }
+
+    @Override
+    protected void startSimulation() {
+
+    }
+
+    @Override
+    protected void onSimulationEvent(SimulationEvent<SimulationEventType> event) {
+
+    }
+
+    @Override
+    protected Simulatable<SimulationEventType> newInitialInstance() {
+        return new Network(cluster, configuration);
+    }
+
+    public enum RecordType {
+        /** sum of the rates of all flows in bytes per nanosecond */
+        TRANSFER_RATE,
+        ACTIVE_FLOWS
+    }
+
+    public class Flow {
+
+        private final int[] path;
+        /** position in the member list of every link of the path */
+        private final int[] positions;
+        private final Runnable onDone;
+        /** bytes left at the updated timestamp, when the rate last changed */
+        private double remaining;
+        private long updated;
+        private double rate, previousRate;
+        private double completion;
+        private int index, completionIndex;
+        /** last update rounds the flow was recomputed in and checked for its bottleneck */
+        private int included, checked;
+        private boolean done;
+
+        private Flow(int[] path, long size, Runnable onDone) {
+            this.path = path;
+            positions = new int[path.length];
+            this.remaining = size;
+            this.onDone = onDone;
+        }
+
+        public double getRate() {
+            return Math.max(rate, 0);
+        }
+
+        public void cancel() {
+            if (! done) {
+                remove(this);
+                getActiveFlows().add(- 1);
+                requestUpdate();
+            }
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+    }
+}
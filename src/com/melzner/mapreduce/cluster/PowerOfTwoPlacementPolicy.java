@@ -0,0 +1,27 @@
+package com.melzner.mapreduce.cluster;
+
+import java.util.SplittableRandom;
+import java.util.function.Predicate;
+
+/** Power of two choices: of two uniformly chosen machines, a replica goes to the one with the less used drive. */
+class PowerOfTwoPlacementPolicy implements BlockPlacementPolicy {
+
+    private final MachineHeap machines;
+    private final SplittableRandom random;
+
+    PowerOfTwoPlacementPolicy(MachineHeap machines, SplittableRandom random) {
+        this.machines = machines;
+        this.random = random;
+    }
+
+    @Override
+    public Machine chooseTarget(long[] block, Predicate<Machine> excluded) {
+        Predicate<Machine> accepted = m -> ! BlockPlacementPolicy.holdsReplica(block, m) && ! excluded.test(m);
+        Machine first = machines.getRandom(random, accepted);
+        if (first == null) {
+            return null;
+        }
+        Machine second = machines.getRandom(random, accepted.and(m -> m != first));
+        return second == null || machines.compare(first, second) <= 0 ? first : second;
+    }
+}
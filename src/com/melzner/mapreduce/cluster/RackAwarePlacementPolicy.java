@@ -0,0 +1,60 @@
+package com.melzner.mapreduce.cluster;
+
+import java.util.SplittableRandom;
+import java.util.function.Predicate;
+
+/** Default placement of HDFS: the second replica on another rack, the third on the rack of the second. */
+class RackAwarePlacementPolicy implements BlockPlacementPolicy {
+
+    private final Cluster cluster;
+    private final MachineHeap machines;
+    private final SplittableRandom random;
+
+    RackAwarePlacementPolicy(Cluster cluster, MachineHeap machines, SplittableRandom random) {
+        this.cluster = cluster;
+        this.machines = machines;
+        this.random = random;
+    }
+
+    @Override
+    public Machine chooseTarget(long[] block, Predicate<Machine> excluded) {
+        Predicate<Machine> accepted = m -> ! BlockPlacementPolicy.holdsReplica(block, m) && ! excluded.test(m);
+        int first = - 1, second = - 1, replicas = 0;
+        for (int i = 1; i < block.length; i++) {
+            if (block[i] >= 0) {
+                if (replicas == 0) {
+                    first = (int) block[i];
+                } else if (replicas == 1) {
+                    second = (int) block[i];
+                }
+                replicas++;
+            }
+        }
+        Machine machine = null;
+        if (replicas == 1 || replicas == 2 && getRack(first) == getRack(second)) {
+            int rack = getRack(first);
+            machine = machines.getRandom(random, accepted.and(m -> m.getRack() != rack));
+        } else if (replicas == 2) {
+            machine = getRandomInRack(getRack(second), accepted);
+        }
+        return machine != null ? machine : machines.getRandom(random, accepted);
+    }
+
+    private Machine getRandomInRack(int rack, Predicate<Machine> accepted) {
+        int machinesPerRack = cluster.configuration.machinesPerRack.get();
+        int start = rack * machinesPerRack;
+        int count = Math.min(machinesPerRack, cluster.getMachines().size() - start);
+        int offset = random.nextInt(count);
+        for (int i = 0; i < count; i++) {
+            Machine machine = cluster.getMachine(start + (offset + i) % count);
+            if (machines.contains(machine) && accepted.test(machine)) {
+                return machine;
+            }
+        }
+        return null;
+    }
+
+    private int getRack(int machine) {
+        return cluster.getMachine(machine).getRack();
+    }
+}
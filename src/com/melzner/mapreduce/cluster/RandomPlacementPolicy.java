@@ -0,0 +1,23 @@
+package com.melzner.mapreduce.cluster;
+
+import java.util.SplittableRandom;
+import java.util.function.Predicate;
+
+/**
+ * Every replica goes to a uniformly chosen machine, regardless of racks and drive usage.
+ */
+class RandomPlacementPolicy implements BlockPlacementPolicy {
+
+    private final MachineHeap machines;
+    private final SplittableRandom random;
+
+    RandomPlacementPolicy(MachineHeap machines, SplittableRandom random) {
+        this.machines = machines;
+        this.random = random;
+    }
+
+    @Override
+    public Machine chooseTarget(long[] block, Predicate<Machine> excluded) {
+        return machines.getRandom(random, m -> ! BlockPlacementPolicy.holdsReplica(block, m) && ! excluded.test(m));
+    }
+}
@@ -0,0 +1,198 @@
+package com.melzner.mapreduce.cluster;
+
+import com.melzner.mapreduce.computation.MapReduceExecutionOrder;
+import com.melzner.mapreduce.scenario.ClusterConfig;
+import com.melzner.mapreduce.simulation.IntRecord;
+import com.melzner.mapreduce.simulation.LongRecord;
+import com.melzner.mapreduce.simulation.Simulatable;
+import com.melzner.mapreduce.simulation.SimulationEvent;
+import com.melzner.mapreduce.simulation.SimulationEventType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Copies the replicas lost with failed machines in the background, like the HDFS name node's replication monitor. */
+class ReplicationMonitor extends Simulatable<SimulationEventType> {
+
+    private final Cluster cluster;
+    private final DFS dfs;
+    private final int maxStreams;
+    /** under-replicated blocks as keys of {@link DFS} in the order they lost their replicas */
+    private final Set<Long> atRiskBlocks = new LinkedHashSet<>();
+    private final Set<Long> underReplicatedBlocks = new LinkedHashSet<>();
+    private final Map<Long, Integer> copiesPerBlock = new HashMap<>();
+    private final List<Copy> copies = new ArrayList<>();
+    private final int[] sendingCopies, receivingCopies;
+    /** fetched on first use, replicas are lost during the simulation only */
+    private IntRecord underReplicated, activeCopies, lostBlocks;
+    private LongRecord reReplicatedBytes;
+
+    ReplicationMonitor(Cluster cluster, DFS dfs, ClusterConfig configuration) {
+        super(MapReduceExecutionOrder.CLUSTER);
+        this.cluster = cluster;
+        this.dfs = dfs;
+        maxStreams = configuration.reReplicationStreams.get();
+        sendingCopies = new int[configuration.machineCount.get()];
+        receivingCopies = new int[sendingCopies.length];
+    }
+
+    boolean isEnabled() {
+        return maxStreams > 0;
+    }
+
+    void onUnderReplicated(long key, int replicas) {
+        if (replicas == dfs.getDataUnits()) {
+            underReplicatedBlocks.remove(key);
+            atRiskBlocks.add(key);
+        } else if (! atRiskBlocks.contains(key)) {
+            underReplicatedBlocks.add(key);
+        }
+        updateUnderReplicated();
+    }
+
+    void onBlockLost(long key) {
+        atRiskBlocks.remove(key);
+        underReplicatedBlocks.remove(key);
+        updateUnderReplicated();
+        if (lostBlocks == null) {
+            lostBlocks = getIntRecord(DFS.RecordType.LOST_BLOCKS);
+        }
+        lostBlocks.add(1);
+    }
+
+    void cancelCopies(Machine machine) {
+        for (Iterator<Copy> iterator = copies.iterator(); iterator.hasNext(); ) {
+            Copy copy = iterator.next();
+            if (copy.sources.contains(machine) || copy.target == machine) {
+                iterator.remove();
+                for (Network.Flow flow : copy.flows) {
+                    flow.cancel();
+                }
+                endCopy(copy);
+            }
+        }
+    }
+
+    void startCopies() {
+        for (Set<Long> queue : List.of(atRiskBlocks, underReplicatedBlocks)) {
+            for (long key : queue) {
+                long[] block = dfs.getBlock(key);
+                int missing = 0;
+                for (int i = 1; i < block.length; i++) {
+                    missing += block[i] < 0 ? 1 : 0;
+                }
+                missing -= copiesPerBlock.getOrDefault(key, 0);
+                for (; missing > 0; missing--) {
+                    List<Machine> sources = getSources(block);
+                    Machine target = sources == null ? null
+                            : dfs.chooseReplicaTarget(block, m -> receivingCopies[m.getId()] > 0);
+                    if (target == null) {
+                        break;
+                    }
+                    startCopy(key, dfs.getBlockUnitSize(block), sources, target);
+                }
+            }
+        }
+    }
+
+    private List<Machine> getSources(long[] block) {
+        List<Machine> sources = new ArrayList<>(dfs.getDataUnits());
+        for (int i = 1; i < block.length && sources.size() < dfs.getDataUnits(); i++) {
+            if (block[i] >= 0 && sendingCopies[(int) block[i]] < maxStreams) {
+                sources.add(cluster.getMachine((int) block[i]));
+            }
+        }
+        return sources.size() == dfs.getDataUnits() ? sources : null;
+    }
+
+    private void startCopy(long key, long size, List<Machine> sources, Machine target) {
+        Copy copy = new Copy(key, sources, target);
+        copies.add(copy);
+        copiesPerBlock.merge(key, 1, Integer::sum);
+        receivingCopies[target.getId()]++;
+        getActiveCopies().add(1);
+        int[] pendingFlows = {sources.size()};
+        for (Machine source : sources) {
+            sendingCopies[source.getId()]++;
+            copy.flows.add(cluster.getNetwork().reReplicate(source, target, size, () -> {
+                if (-- pendingFlows[0] == 0) {
+                    onCopied(copy, size * sources.size());
+                }
+            }));
+        }
+    }
+
+    private void onCopied(Copy copy, long bytes) {
+        copies.remove(copy);
+        endCopy(copy);
+        if (reReplicatedBytes == null) {
+            reReplicatedBytes = getLongRecord(DFS.RecordType.RE_REPLICATED_BYTES);
+        }
+        reReplicatedBytes.add(bytes);
+        int replicas = dfs.addReplica(copy.key, copy.target);
+        if (replicas == dfs.getUnits()) {
+            atRiskBlocks.remove(copy.key);
+            underReplicatedBlocks.remove(copy.key);
+        } else if (atRiskBlocks.remove(copy.key)) {
+            underReplicatedBlocks.add(copy.key);
+        }
+        updateUnderReplicated();
+        startCopies();
+    }
+
+    private void endCopy(Copy copy) {
+        copiesPerBlock.computeIfPresent(copy.key, (key, count) -> count == 1 ? null : count - 1);
+        for (Machine source : copy.sources) {
+            sendingCopies[source.getId()]--;
+        }
+        receivingCopies[copy.target.getId()]--;
+        getActiveCopies().add(- 1);
+    }
+
+    private void updateUnderReplicated() {
+        if (underReplicated == null) {
+            underReplicated = getIntRecord(DFS.RecordType.UNDER_REPLICATED_BLOCKS);
+        }
+        underReplicated.set(atRiskBlocks.size() + underReplicatedBlocks.size());
+    }
+
+    private IntRecord getActiveCopies() {
+        if (activeCopies == null) {
+            activeCopies = getIntRecord(DFS.RecordType.RE_REPLICATION_COPIES);
+        }
+        return activeCopies;
+    }
+
+    @Override
+    protected void startSimulation() {
+
+    }
+
+    @Override
+    protected void onSimulationEvent(SimulationEvent<SimulationEventType> event) {
+
+    }
+
+    @Override
+    protected Simulatable<SimulationEventType> newInitialInstance() {
+        return new ReplicationMonitor(cluster, dfs, cluster.configuration);
+    }
+
+    private static class Copy {
+        private final long key;
+        private final List<Machine> sources;
+        private final Machine target;
+        private final List<Network.Flow> flows = new ArrayList<>();
+
+        private Copy(long key, List<Machine> sources, Machine target) {
+            this.key = key;
+            this.sources = sources;
+            this.target = target;
+        }
+    }
+}
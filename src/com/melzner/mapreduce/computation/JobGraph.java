@@ -0,0 +1,48 @@
+package com.melzner.mapreduce.computation;
+
+import com.melzner.mapreduce.cluster.Cluster;
+import com.melzner.mapreduce.scenario.SimpleComputationConfig;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Computations of a scenario as stages of a directed acyclic graph, like chained MapReduce jobs or a Tez DAG. */
+public class JobGraph {
+
+    private final Map<String, SimpleComputation> stages = new LinkedHashMap<>();
+
+    public JobGraph(Cluster cluster, List<SimpleComputationConfig> configs) {
+        for (SimpleComputationConfig config : configs) {
+            Set<SimpleComputation> inputs = new LinkedHashSet<>();
+            for (String inputName : config.inputs.get().split(",")) {
+                inputName = inputName.trim();
+                if (inputName.isEmpty()) {
+                    continue;
+                }
+                SimpleComputation input = stages.get(inputName);
+                if (input == null) {
+                    throw new IllegalArgumentException("input '" + inputName + "' isn't declared before the computation");
+                }
+                inputs.add(input);
+            }
+            SimpleComputation stage = new SimpleComputation(cluster, config, new ArrayList<>(inputs));
+            if (stages.put(stage.getName(), stage) != null) {
+                throw new IllegalArgumentException("computation '" + stage.getName() + "' is declared twice");
+            }
+        }
+    }
+
+    public Collection<SimpleComputation> getStages() {
+        return Collections.unmodifiableCollection(stages.values());
+    }
+
+    public SimpleComputation getStage(String name) {
+        return stages.get(name);
+    }
+}
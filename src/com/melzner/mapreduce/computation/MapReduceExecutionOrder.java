@@ -3,7 +3,7 @@ package com.melzner.mapreduce.computation;
 import com.melzner.mapreduce.simulation.ExecutionOrder;
 
 public enum MapReduceExecutionOrder implements ExecutionOrder {
-    CLUSTER(1), COMPUTATION(2), MACHINE(0);
+    CLUSTER(1), COMPUTATION(2), MACHINE(0), NETWORK(0.5);
 
     private final double order;
 
@@ -2,80 +2,237 @@ package com.melzner.mapreduce.computation;
 
 import com.melzner.mapreduce.cluster.Cluster;
 import com.melzner.mapreduce.cluster.Cluster.ClusterEventType;
+import com.melzner.mapreduce.cluster.ClusterJob;
 import com.melzner.mapreduce.cluster.DFS;
+import com.melzner.mapreduce.cluster.HardDrive;
+import com.melzner.mapreduce.cluster.Locality;
 import com.melzner.mapreduce.cluster.Machine;
 import com.melzner.mapreduce.scenario.SimpleComputationConfig;
+import com.melzner.mapreduce.simulation.Cancellable;
+import com.melzner.mapreduce.simulation.IntRecord;
 import com.melzner.mapreduce.simulation.Simulatable;
 import com.melzner.mapreduce.simulation.SimulationEvent;
+import com.melzner.mapreduce.simulation.SimulationEventPool;
 import com.melzner.mapreduce.simulation.SimulationEventType;
 import com.melzner.mapreduce.simulation.ValueSimulationEvent;
 import com.melzner.xmlutil.XMLValue;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
-public class SimpleComputation extends Simulatable<SimpleComputation.EventType> {
+public class SimpleComputation extends Simulatable<SimpleComputation.EventType> implements ClusterJob {
 
     private final Cluster cluster;
     private final SimpleComputationConfig config;
 
-    private final DFS.DFSFile file;
-    private TaskExecutor<?> taskExecutor;
+    private final MapInput input = new MapInput();
+    /** file the reduce tasks write their output to, null if no computation reads it */
+    private DFS.DFSFile output;
+    private final Map<EventType, SimulationEventPool<ValueSimulationEvent<EventType, Machine>>> machineEvents =
+            new EnumMap<>(EventType.class);
+    private final SimulationEventPool<SimulationEvent<EventType>> invokeTasksEvents =
+            new SimulationEventPool<>(() -> new SimulationEvent<>(EventType.INVOKE_TASKS));
+    private final Consumer<Machine.Task> readInputBlock;
+    private final String name;
+    /** machines offered by the cluster and accepted, counted per offer until its INVOKE_TASKS_FOR_MACHINE event */
+    private final Map<Machine, Integer> claimedMachines = new HashMap<>();
+    private int claims;
     private MapTaskExecutor mapTasksExecutor;
     private ReduceTaskExecutor reduceTaskExecutor;
-    private boolean shuffleActive;
+    /** finished map outputs and their combined bytes per rack of the machine holding them */
+    private int[] mapOutputsPerRack;
+    private long[] mapOutputBytesPerRack;
+    private int mapOutputCount;
+    private long mapOutputBytes;
+    private int pendingOutputWrites;
+    private final Set<Shuffle> activeShuffles = new LinkedHashSet<>();
+    private final Set<Integer> shuffledReducers = new HashSet<>();
+    private long submitTime;
+    private boolean submitted, started, reducersStarted, mappingDone, finished;
 
     public SimpleComputation(Cluster cluster, SimpleComputationConfig config) {
+        this(cluster, config, Collections.emptyList());
+    }
+
+    /** a pipelined computation maps the blocks of its inputs as they are written */
+    public SimpleComputation(Cluster cluster, SimpleComputationConfig config, List<SimpleComputation> inputs) {
         super(MapReduceExecutionOrder.COMPUTATION);
-        file = cluster.getDFS().writeFile(
-                (long) config.clusterConfig.dfsBlockSize.get() * config.inputSplitSize.get()
-        );
+        if (inputs.isEmpty()) {
+            SplittableRandom random = cluster.getConfigurationRandom();
+            DFS.DFSFile file = cluster.getDFS().writeFile(
+                    (long) config.clusterConfig.dfsBlockSize.get(random) * config.inputSplitSize.get(random)
+            );
+            for (int i = 0; i < file.getBlockCount(); i++) {
+                input.addBlock(file, i);
+            }
+        }
+        for (SimpleComputation computation : inputs) {
+            DFS.DFSFile file = computation.getOutput();
+            input.addFile(file);
+            file.onBlockWritten(block -> onInputBlockWritten(file, block));
+            file.onClosed(this::onInputClosed);
+        }
         this.cluster = cluster;
         this.config = config;
+        readInputBlock = t -> t.readData(config.clusterConfig.dfsBlockSize.get(getRandom()), t.remainingTime());
+        name = config.name.get().isEmpty() ? "computation" + (cluster.getJobs().size() + 1) : config.name.get();
 
-        cluster.addListener(ClusterEventType.BUSY_STATE_CHANGED, e -> {
-            if (! e.machine.isBusy()) {
-                invokeEvent(config.delayAssignTaskToMachineNetwork.get(),
-                        new ValueSimulationEvent<>(EventType.INVOKE_TASKS_FOR_MACHINE, e.machine));
-            }
-        });
+        cluster.submitJob(this);
+    }
+
+    public DFS.DFSFile getOutput() {
+        if (output == null) {
+            output = cluster.getDFS().createFile();
+        }
+        return output;
+    }
+
+    public static String jobRecordKey(JobRecordType type, String name) {
+        return type + ":" + name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getSubmitTime() {
+        return submitTime;
+    }
+
+    @Override
+    public double getWeight() {
+        return config.schedulerWeight.get();
+    }
+
+    @Override
+    public String getQueue() {
+        return config.schedulerQueue.get();
+    }
+
+    @Override
+    public double getTaskCores() {
+        return config.taskCores.get();
+    }
+
+    @Override
+    public long getTaskMemory() {
+        return config.taskMemory.get();
+    }
+
+    @Override
+    public int getOccupiedContainers() {
+        int occupied = claims;
+        if (mapTasksExecutor != null) {
+            occupied += mapTasksExecutor.pendingInstances + reduceTaskExecutor.pendingInstances;
+        }
+        return occupied;
+    }
+
+    @Override
+    public boolean hasTasksToStart() {
+        return submitted && (mapTasksExecutor.hasTasksToStart() || reducersStarted
+                && reduceTaskExecutor.hasTasksToStart() && reduceTaskExecutor.mayStartTask());
+    }
+
+    @Override
+    public boolean offer(Machine machine) {
+        if (! hasTasksToStart() || ! hasRoom(machine)) {
+            return false;
+        }
+        claimedMachines.merge(machine, 1, Integer::sum);
+        claims++;
+        invokeEvent(config.delayAssignTaskToMachineNetwork.get(getRandom()),
+                machineEvent(EventType.INVOKE_TASKS_FOR_MACHINE, machine));
+        return true;
+    }
+
+    private static long processingTime(double bytes, long throughput) {
+        return (long) (bytes / throughput * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private boolean hasRoom(Machine machine) {
+        return machine.hasRoomFor(config.taskCores.get(), config.taskMemory.get());
+    }
+
+    private boolean releaseClaim(Machine machine) {
+        Integer count = claimedMachines.get(machine);
+        if (count == null) {
+            return false;
+        } else if (count == 1) {
+            claimedMachines.remove(machine);
+        } else {
+            claimedMachines.put(machine, count - 1);
+        }
+        claims--;
+        return true;
+    }
+
+    private ValueSimulationEvent<EventType, Machine> machineEvent(EventType type, Machine machine) {
+        return machineEvents.computeIfAbsent(type, t -> new SimulationEventPool<>(() -> new ValueSimulationEvent<>(t, null)))
+                .obtain().setValue(machine);
     }
 
     @Override
     protected void startSimulation() {
-        invokeEvent(0, new SimulationEvent<>(EventType.INVOKE_TASKS));
-        taskExecutor = mapTasksExecutor = new MapTaskExecutor();
+        submitTime = config.submitTime.get(getRandom());
+        if (config.pipelined.get() || input.isComplete()) {
+            invokeEvent(submitTime, invokeTasksEvents.obtain());
+        }
+        mapTasksExecutor = new MapTaskExecutor();
         reduceTaskExecutor = new ReduceTaskExecutor();
-        cluster.addListener(ClusterEventType.MACHINE_FAILED, e -> taskExecutor.onMachineFail(e.machine));
+        mapOutputsPerRack = new int[cluster.getRackCount()];
+        mapOutputBytesPerRack = new long[cluster.getRackCount()];
+        cluster.addListener(ClusterEventType.MACHINE_FAILED, e -> {
+            mapTasksExecutor.onMachineFail(e.machine);
+            reduceTaskExecutor.onMachineFail(e.machine);
+            invokeEvent(config.delayAssignTaskToMachineNetwork.get(getRandom()), machineEvent(EventType.TASK_FAIL, e.machine));
+        });
     }
 
     @Override
     protected void onSimulationEvent(SimulationEvent<EventType> event) {
-        if (shuffleActive) {
-            if (event.getType() == EventType.SHUFFLE_DONE) {
-                taskExecutor = reduceTaskExecutor;
-                shuffleActive = false;
-                updateRecordValue(RecordType.SHUFFLE_DONE,i->getTimeStamp(),0L);
-                invokeEvent(0, new SimulationEvent<>(EventType.INVOKE_TASKS));
-            }
-        }
         switch (event.getType()) {
             case INVOKE_TASKS:
-                taskExecutor.invokeTasks();
+                submitted = true;
+                mapTasksExecutor.restartLocalityWait();
+                mapTasksExecutor.invokeTasks();
+                break;
+            case START_REDUCERS:
+                reduceTaskExecutor.invokeTasks();
                 break;
             case TASK_SUCCESS:
-                if (mapTasksExecutor.tasks.getTasks(MapTaskState.DONE).size() ==
-                        mapTasksExecutor.tasks.size() && taskExecutor == mapTasksExecutor) {
-                    shuffleActive = true;
-                    updateRecordValue(RecordType.MAPPING_DONE, i->getTimeStamp(),0L);
-                    invokeEvent(config.shuffleDuration.get(), new SimulationEvent<>(EventType.SHUFFLE_DONE));
-                    break;
-                }
             case TASK_FAIL:
             case NOT_INVOKED:
             case INVOKE_TASKS_FOR_MACHINE:
                 Machine machine = ((ValueSimulationEvent<?, Machine>) event).getValue();
-                taskExecutor.invokeTasks(machine);
+                boolean claimed = event.getType() == EventType.INVOKE_TASKS_FOR_MACHINE && releaseClaim(machine);
+                if (! machine.isAlive()) {
+                    // a failed machine takes no tasks, the tasks reset by its failure start on the machines holding
+                    // their input instead
+                    if (! mappingDone) {
+                        mapTasksExecutor.invokeTasks();
+                    }
+                    if (reducersStarted) {
+                        reduceTaskExecutor.invokeTasks();
+                    }
+                    break;
+                }
+                int startedInstances = mapTasksExecutor.pendingInstances + reduceTaskExecutor.pendingInstances;
+                if (! mappingDone) {
+                    mapTasksExecutor.invokeTasks(machine);
+                }
+                if (reducersStarted) {
+                    reduceTaskExecutor.invokeTasks(machine);
+                }
+                startedInstances = mapTasksExecutor.pendingInstances + reduceTaskExecutor.pendingInstances - startedInstances;
+                if (claimed && startedInstances == 0 && hasRoom(machine)) {
+                    // the offered machine wasn't used, the other computations may still use it
+                    cluster.declineMachine(machine, this);
+                }
                 break;
         }
 
@@ -90,9 +247,9 @@ public class SimpleComputation extends Simulatable<SimpleComputation.EventType>
         final Map<Machine, Set<Integer>> runningTasks = new HashMap<>();
         final Map<Integer, Integer> pendingInstancesPerTask = new HashMap<>();
         final Map<Integer, Set<Machine.Task>> runningInstancesPerTask = new HashMap<>();
-        final Set<Machine> pendingMachines = new HashSet<>();
+        /** instances started and not ended yet */
+        int pendingInstances;
         final Set<Machine> assignedFunction = new HashSet<>();
-        final int compensateStragglersThreshold = config.clusterConfig.compensateStragglerThreshold.get();
         private final XMLValue<Long> computationDuration;
         long invokedLastTask = 0;
 
@@ -110,39 +267,156 @@ public class SimpleComputation extends Simulatable<SimpleComputation.EventType>
 
         abstract Machine getNewMachineForTask(Integer index);
 
+        boolean hasTasksToStart() {
+            return ! tasks.getTasks(STATE_IDLE).isEmpty()
+                    || ! tasks.getTasks(STATE_RUNNING).isEmpty() && cluster.maySpeculate();
+        }
+
+        Locality getLocality(Integer taskIndex, Machine machine) {
+            return Locality.NODE_LOCAL;
+        }
+
+        boolean mayStartTask() {
+            return true;
+        }
+
+        void onTaskStarted(Integer taskIndex, Machine.Task task) {
+
+        }
+
+        long getDataDuration(Integer taskIndex) {
+            return 0;
+        }
+
+        void readInput(Integer taskIndex, Machine.Task task) {
+            readInputBlock.accept(task);
+        }
+
         boolean startTask(Integer taskIndex) {
+            if (! submitted || ! mayStartTask() || ! cluster.mayAllocate(SimpleComputation.this)) {
+                return false;
+            }
             Machine machine = getNewMachineForTask(taskIndex);
             if (machine == null) {
                 return false;
             }
+            // a machine holding a fragment of an erasure coded block still reads the other fragments remotely
+            startTask(taskIndex, machine, getLocality(taskIndex, machine), false);
+            return true;
+        }
+
+        /** speculative execution as in LATE, the running task estimated to finish last gets a further instance */
+        void speculate(Machine machine) {
+            if (! submitted || ! cluster.maySpeculate() || ! hasRoom(machine) || cluster.isSlowMachine(machine)
+                    || ! mayStartTask() || ! cluster.mayAllocate(SimpleComputation.this)) {
+                return;
+            }
+            double[] progressRates = new double[pendingInstances];
+            int count = 0;
+            for (Integer runningTask : tasks.getTasks(STATE_RUNNING)) {
+                for (Machine.Task instance : runningInstancesPerTask.get(runningTask)) {
+                    if (instance.getProgress() > 0) {
+                        progressRates[count++] = instance.getProgress() / instance.getRunningTime();
+                    }
+                }
+            }
+            if (count == 0) {
+                return;
+            }
+            Arrays.sort(progressRates, 0, count);
+            double slowTaskRate = progressRates[(int) (config.clusterConfig.slowTaskThreshold.get() * (count - 1))];
+
+            Integer slowestTask = null;
+            double longestTimeLeft = 0;
+            for (Integer runningTask : tasks.getTasks(STATE_RUNNING)) {
+                Set<Machine.Task> instances = runningInstancesPerTask.get(runningTask);
+                if (instances.size() < pendingInstancesPerTask.get(runningTask)) {
+                    continue;
+                }
+                double timeLeft = Double.POSITIVE_INFINITY;
+                double progressRate = 0;
+                for (Machine.Task instance : instances) {
+                    double progress = instance.getProgress();
+                    if (progress <= 0 || instance.getMachine() == machine) {
+                        timeLeft = Double.NaN;
+                        break;
+                    }
+                    double instanceRate = progress / instance.getRunningTime();
+                    if ((1 - progress) / instanceRate < timeLeft) {
+                        timeLeft = (1 - progress) / instanceRate;
+                        progressRate = instanceRate;
+                    }
+                }
+                if (progressRate <= slowTaskRate && timeLeft > longestTimeLeft) {
+                    slowestTask = runningTask;
+                    longestTimeLeft = timeLeft;
+                }
+            }
+            if (slowestTask != null) {
+                startTask(slowestTask, machine, getLocality(slowestTask, machine), true);
+            }
+        }
+
+        void startTask(Integer taskIndex, Machine machine, Locality locality, boolean speculative) {
+            if (! started) {
+                started = true;
+                getLongRecord(jobRecordKey(JobRecordType.WAIT, name)).set(getTimeStamp() - submitTime);
+            }
 
             tasks.changeTaskState(taskIndex, STATE_PREPARED);
             runningTasks.computeIfAbsent(machine, m -> new HashSet<>()).add(taskIndex);
-            long internalDelay = Math.max(invokedLastTask + config.delayAssignTaskToMachineInternal.get() - getTimeStamp(), 0);
-            long taskDuration = computationDuration.get();
+            long internalDelay = Math.max(invokedLastTask + config.delayAssignTaskToMachineInternal.get(getRandom()) - getTimeStamp(), 0);
+            long taskDuration = computationDuration.get(getRandom()) + getDataDuration(taskIndex);
             boolean added = assignedFunction.add(machine);
             if (added) {
-                internalDelay += config.assignFunctionDelay.get();
-                taskDuration += config.setupMachineDelay.get();
+                internalDelay += config.assignFunctionDelay.get(getRandom());
+                taskDuration += config.setupMachineDelay.get(getRandom());
             }
-            pendingMachines.add(machine);
+            pendingInstances++;
             pendingInstancesPerTask.merge(taskIndex, 1, Integer::sum);
-            machine.startTask(config.delayAssignTaskToMachineNetwork.get() + internalDelay, taskDuration,
+            if (speculative) {
+                cluster.onSpeculativeInstanceStarted();
+                getIntRecord(RecordType.SPECULATIVE_INSTANCES).add(1);
+            }
+            machine.startTask(config.delayAssignTaskToMachineNetwork.get(getRandom()) + internalDelay, taskDuration,
+                    config.taskCores.get(), config.taskMemory.get(),
                     task -> {
-                        runningInstancesPerTask.computeIfAbsent(taskIndex, i -> new HashSet<>()).add(task);
+                        runningInstancesPerTask.computeIfAbsent(taskIndex, i -> new LinkedHashSet<>()).add(task);
                         tasks.changeTaskState(taskIndex, STATE_RUNNING, STATE_PREPARED);
-                        task.action(config.hardDriveDelay.get(), t -> t.readData(config.clusterConfig.dfsBlockSize.get(), t.remainingTime()));
+                        if (locality == Locality.NODE_LOCAL && this == mapTasksExecutor
+                                && config.clusterConfig.machineDiskBandwidth.get() > 0) {
+                            // the containers of the machine share its disk
+                            task.readLocalData(input.getBlockSize(taskIndex));
+                        } else if (locality == Locality.NODE_LOCAL) {
+                            task.action(config.hardDriveDelay.get(getRandom()), t -> readInput(taskIndex, t));
+                        } else {
+                            // remote input has to arrive over the network before the task can compute on it
+                            task.readRemoteData(input.getReadSources(taskIndex, machine), input.getUnitSize(taskIndex));
+                            if (input.isDegraded(taskIndex)) {
+                                getIntRecord(DFS.RecordType.DEGRADED_READS).add(1);
+                            }
+                        }
+                        onTaskStarted(taskIndex, task);
                         task.onNotInvoked(t -> onNotInvoked(taskIndex, machine, added));
                         task.onEnd(t -> {
-                            pendingMachines.remove(machine);
+                            pendingInstances--;
                             pendingInstancesPerTask.merge(taskIndex, - 1, Integer::sum);
                             runningInstancesPerTask.get(taskIndex).remove(task);
+                            if (speculative) {
+                                onSpeculativeInstanceEnd(taskIndex, task);
+                            }
                         });
                     },
                     () -> onTaskSuccess(taskIndex, machine)
             );
             invokedLastTask = getTimeStamp() + internalDelay;
-            return true;
+        }
+
+        void onSpeculativeInstanceEnd(Integer taskIndex, Machine.Task task) {
+            cluster.onSpeculativeInstanceEnded();
+            getIntRecord(RecordType.SPECULATIVE_INSTANCES).add(- 1);
+            getLongRecord(task.hasSucceeded() ? RecordType.SPECULATIVE_USEFUL_TIME : RecordType.SPECULATIVE_WASTED_TIME)
+                    .add(task.getRunningTime());
         }
 
         void onNotInvoked(Integer idleTask, Machine machine, boolean added) {
@@ -150,18 +424,18 @@ public class SimpleComputation extends Simulatable<SimpleComputation.EventType>
                 assignedFunction.remove(machine);
             }
             tasks.changeTaskState(idleTask, STATE_IDLE, STATE_PREPARED, STATE_RUNNING);
-            invokeEvent(config.delayAssignTaskToMachineNetwork.get(), new ValueSimulationEvent<>(EventType.NOT_INVOKED, machine));
+            invokeEvent(config.delayAssignTaskToMachineNetwork.get(getRandom()), machineEvent(EventType.NOT_INVOKED, machine));
         }
 
         void onMachineFail(Machine machine) {
             Set<Integer> runningTasksForMachine = runningTasks.get(machine);
             if (runningTasksForMachine != null) {
                 for (Integer failedTask : runningTasksForMachine) {
-                    tasks.changeTaskState(failedTask, STATE_IDLE);
+                    // instances of done tasks may have been terminated on the machine, their output is kept
+                    tasks.changeTaskState(failedTask, STATE_IDLE, STATE_PREPARED, STATE_RUNNING);
                 }
             }
             runningTasks.remove(machine);
-            invokeEvent(config.delayAssignTaskToMachineNetwork.get(), new ValueSimulationEvent<>(EventType.TASK_FAIL, machine));
         }
 
         abstract void invokeTasks();
@@ -176,7 +450,11 @@ public class SimpleComputation extends Simulatable<SimpleComputation.EventType>
                 }
             }
             runningTasks.get(machine).remove(idleTask);
-            invokeEvent(config.delayAssignTaskToMachineNetwork.get(), new ValueSimulationEvent<>(EventType.TASK_SUCCESS, machine));
+            if (this == reduceTaskExecutor && ! finished && tasks.getTasks(STATE_DONE).size() == tasks.size()) {
+                finished = true;
+                getLongRecord(jobRecordKey(JobRecordType.MAKESPAN, name)).set(getTimeStamp() - submitTime);
+            }
+            invokeEvent(config.delayAssignTaskToMachineNetwork.get(getRandom()), machineEvent(EventType.TASK_SUCCESS, machine));
         }
 
     }
@@ -184,7 +462,7 @@ public class SimpleComputation extends Simulatable<SimpleComputation.EventType>
     private class ReduceTaskExecutor extends TaskExecutor<ReduceTaskState> {
 
         ReduceTaskExecutor() {
-            super(new TaskGroup<>(config.inputSplitSize.get(), config.outputSplitSize.get(),
+            super(new TaskGroup<>(config.inputSplitSize.get(getRandom()), config.outputSplitSize.get(getRandom()),
                             ReduceTaskState.values(), ReduceTaskState.IDLE),
                     config.reduceComputationDuration,
                     ReduceTaskState.IDLE, ReduceTaskState.PREPARED,
@@ -194,26 +472,33 @@ public class SimpleComputation extends Simulatable<SimpleComputation.EventType>
 
         @Override
         Machine getNewMachineForTask(Integer index) {
-            return cluster.getFreeMachine(m -> ! pendingMachines.contains(m));
+            return cluster.getFreeMachine(SimpleComputation.this::hasRoom);
+        }
+
+        /** idle reducers waiting for map outputs would starve the map tasks while maps are left */
+        @Override
+        boolean mayStartTask() {
+            if (mappingDone) {
+                return true;
+            }
+            long matchingDoneMaps = (long) tasks.size() * mapOutputCount / mapTasksExecutor.tasks.size();
+            double rampUpLimit = config.reduceRampUpLimit.get() * getOccupiedContainers();
+            return pendingInstances < Math.min(matchingDoneMaps, rampUpLimit);
+        }
+
+        @Override
+        void onTaskStarted(Integer taskIndex, Machine.Task task) {
+            task.prepare(ready -> new Shuffle(taskIndex, task, ready));
         }
 
         @Override
         public void invokeTasks() {
-            Set<Integer> idleTasks = tasks.getTasks(ReduceTaskState.IDLE);
-            for (Integer idleTask : new ArrayList<>(idleTasks)) {
+            if (! mayStartTask()) {
+                return;
+            }
+            for (Integer idleTask : new ArrayList<>(tasks.getTasks(ReduceTaskState.IDLE))) {
                 if (! startTask(idleTask)) {
                     break;
-                } else if (idleTasks.size() < compensateStragglersThreshold) {
-                    for (Integer pendingTask : new ArrayList<>(tasks.getTasks(ReduceTaskState.PREPARED))) {
-                        for (int i = pendingInstancesPerTask.get(pendingTask); i < DFS.COPY_COUNT; i++) {
-                            if (! startTask(pendingTask)) break;
-                        }
-                    }
-                    for (Integer runningTask : new ArrayList<>(tasks.getTasks(ReduceTaskState.RUNNING))) {
-                        for (int i = pendingInstancesPerTask.get(runningTask); i < DFS.COPY_COUNT; i++) {
-                            if (! startTask(runningTask)) break;
-                        }
-                    }
                 }
             }
 
@@ -222,22 +507,102 @@ public class SimpleComputation extends Simulatable<SimpleComputation.EventType>
         @Override
         public void invokeTasks(Machine machine) {
             invokeTasks();
+            if (tasks.getTasks(ReduceTaskState.IDLE).isEmpty()) {
+                speculate(machine);
+            }
+        }
+
+        @Override
+        void onTaskSuccess(Integer idleTask, Machine machine) {
+            boolean newOutput = tasks.getState(idleTask) != ReduceTaskState.DONE;
+            super.onTaskSuccess(idleTask, machine);
+            if (newOutput && output != null) {
+                writeOutput(machine);
+            }
         }
 
     }
 
+    /** delay scheduling, the allowed locality widens by one level per expired wait */
     private class MapTaskExecutor extends TaskExecutor<MapTaskState> {
 
+        /** map output bytes per task before the combiner */
+        private long[] outputSizes;
+        private Locality allowedLocality = Locality.NODE_LOCAL;
+        /** start of the wait at the allowed locality level */
+        private long localityWaitStart = submitTime;
+        private Cancellable localityWait;
+
         MapTaskExecutor() {
-            super(new TaskGroup<>(0, config.inputSplitSize.get(), MapTaskState.values(), MapTaskState.IDLE),
+            super(new TaskGroup<>(0, input.size(), MapTaskState.values(), MapTaskState.IDLE),
                     config.mapComputationDuration,
                     MapTaskState.IDLE, MapTaskState.PREPARED,
                     MapTaskState.RUNNING, MapTaskState.DONE);
+            outputSizes = new long[tasks.size()];
+            for (int i = 0; i < outputSizes.length; i++) {
+                outputSizes[i] = (long) (input.getBlockSize(i) * config.mapSelectivity.get(getRandom()));
+            }
+        }
+
+        void addTask(Integer taskIndex) {
+            if (tasks.getTasks(MapTaskState.IDLE).isEmpty()) {
+                restartLocalityWait();
+            }
+            if (taskIndex >= outputSizes.length) {
+                outputSizes = Arrays.copyOf(outputSizes, Math.max(2 * outputSizes.length, 16));
+            }
+            outputSizes[taskIndex] = (long) (input.getBlockSize(taskIndex) * config.mapSelectivity.get(getRandom()));
+            tasks.addTask(taskIndex, MapTaskState.IDLE);
+        }
+
+        void restartLocalityWait() {
+            allowedLocality = Locality.NODE_LOCAL;
+            localityWaitStart = getTimeStamp();
+        }
+
+        long getCombinedOutputSize(Integer taskIndex) {
+            return (long) (outputSizes[taskIndex] * config.combinerRatio.get());
+        }
+
+        @Override
+        long getDataDuration(Integer taskIndex) {
+            long duration = processingTime(getCombinedOutputSize(taskIndex), config.spillThroughput.get());
+            if (config.combinerRatio.get() < 1) {
+                duration += processingTime(outputSizes[taskIndex], config.combinerThroughput.get());
+            }
+            return duration;
+        }
+
+        @Override
+        void readInput(Integer taskIndex, Machine.Task task) {
+            task.readData(input.getBlockSize(taskIndex), task.remainingTime());
         }
 
         @Override
         Machine getNewMachineForTask(Integer index) {
-            return file.getFreeMachineForBlock(index, m -> ! pendingMachines.contains(m));
+            return input.getFreeMachine(index, SimpleComputation.this::hasRoom);
+        }
+
+        @Override
+        void onTaskSuccess(Integer idleTask, Machine machine) {
+            boolean newOutput = tasks.getState(idleTask) != MapTaskState.DONE;
+            super.onTaskSuccess(idleTask, machine);
+            if (newOutput) {
+                onMapOutput(machine, getCombinedOutputSize(idleTask));
+            }
+        }
+
+        @Override
+        Locality getLocality(Integer taskIndex, Machine machine) {
+            return input.getLocality(taskIndex, machine);
+        }
+
+        @Override
+        void startTask(Integer taskIndex, Machine machine, Locality locality, boolean speculative) {
+            super.startTask(taskIndex, machine, locality, speculative);
+            getIntRecord(locality).add(1);
+            allowedLocality = locality;
+            localityWaitStart = getTimeStamp();
         }
 
         @Override
@@ -245,41 +610,316 @@ public class SimpleComputation extends Simulatable<SimpleComputation.EventType>
             Integer[] idleTasks = tasks.getTasks(MapTaskState.IDLE).toArray(new Integer[0]);
             int i = 0;
             for (Integer idleTask : idleTasks) {
-                if (startTask(idleTask) && ++ i == config.inputSplitSize.get() / 3000) return;
+                if (startTask(idleTask) && ++ i == config.inputSplitSize.get(getRandom()) / 3000) break;
             }
+            awaitLocality();
         }
 
         @Override
         public void invokeTasks(Machine machine) {
             Set<Integer> idleTasks = tasks.getTasks(MapTaskState.IDLE);
 
-            for (Integer block : machine.getHardDrive().getBlocksForFile(file)) {
-                if (tasks.getState(block) == MapTaskState.IDLE && startTask(block)) {
-                    break;
+            if (! startLocalTask(machine) && ! idleTasks.isEmpty()) {
+                startNonLocalTask(machine);
+            }
+            if (idleTasks.isEmpty()) {
+                speculate(machine);
+            }
+            awaitLocality();
+        }
+
+        private boolean startLocalTask(Machine machine) {
+            HardDrive drive = machine.getHardDrive();
+            for (DFS.DFSFile file : input.files) {
+                for (int i = 0, count = drive.getBlockCount(file); i < count; i++) {
+                    Integer taskIndex = input.getTask(file, drive.getBlock(file, i));
+                    if (taskIndex != null && tasks.getState(taskIndex) == MapTaskState.IDLE && startTask(taskIndex)) {
+                        return true;
+                    }
                 }
             }
-            if (idleTasks.size() < compensateStragglersThreshold) {
-                for (Integer pendingTask : new ArrayList<>(tasks.getTasks(MapTaskState.PREPARED))) {
-                    for (int i = pendingInstancesPerTask.get(pendingTask); i < DFS.COPY_COUNT; i++) {
-                        if (! startTask(pendingTask)) break;
+            return false;
+        }
+
+        private void onLocalityWaitExpired() {
+            if (getAllowedLocality() != Locality.NODE_LOCAL) {
+                cluster.forEachFreeMachine(m -> ! tasks.getTasks(MapTaskState.IDLE).isEmpty() && startNonLocalTask(m));
+            }
+            awaitLocality();
+        }
+
+        private boolean startNonLocalTask(Machine machine) {
+            Locality allowed = getAllowedLocality();
+            if (! submitted || ! cluster.mayAllocate(SimpleComputation.this)) {
+                return false;
+            } else if (allowed == Locality.NODE_LOCAL || ! hasRoom(machine)) {
+                return true;
+            }
+            Integer closestTask = null;
+            Locality closestLocality = null;
+            for (Integer idleTask : tasks.getTasks(MapTaskState.IDLE)) {
+                Locality locality = input.getLocality(idleTask, machine);
+                if (locality.compareTo(allowed) <= 0 && (closestTask == null || locality.compareTo(closestLocality) < 0)) {
+                    closestTask = idleTask;
+                    closestLocality = locality;
+                    if (locality == Locality.RACK_LOCAL) {
+                        // node local tasks would have been started by the caller
+                        break;
                     }
                 }
-                for (Integer runningTask : new ArrayList<>(tasks.getTasks(MapTaskState.RUNNING))) {
-                    for (int i = pendingInstancesPerTask.get(runningTask); i < DFS.COPY_COUNT; i++) {
-                        if (! startTask(runningTask)) break;
+            }
+            if (closestTask != null) {
+                startTask(closestTask, machine, closestLocality, false);
+            }
+            return true;
+        }
+
+        private Locality getAllowedLocality() {
+            while (allowedLocality != Locality.OFF_RACK && getTimeStamp() - localityWaitStart >= getLocalityWait()) {
+                localityWaitStart += getLocalityWait();
+                allowedLocality = allowedLocality == Locality.NODE_LOCAL ? Locality.RACK_LOCAL : Locality.OFF_RACK;
+            }
+            return allowedLocality;
+        }
+
+        private long getLocalityWait() {
+            return allowedLocality == Locality.NODE_LOCAL ? config.nodeLocalityWait.get() : config.rackLocalityWait.get();
+        }
+
+        private void awaitLocality() {
+            boolean waiting = submitted && ! tasks.getTasks(MapTaskState.IDLE).isEmpty()
+                    && getAllowedLocality() != Locality.OFF_RACK;
+            if (! waiting && localityWait != null) {
+                // a pending expiry would keep the simulation running after the computation finished
+                localityWait.cancel();
+                localityWait = null;
+            } else if (waiting && (localityWait == null || ! localityWait.isPending())) {
+                localityWait = invokeCancellableAction(localityWaitStart + getLocalityWait() - getTimeStamp(),
+                        this::onLocalityWaitExpired);
+            }
+        }
+    }
+
+    private void onMapOutput(Machine machine, long bytes) {
+        mapOutputsPerRack[machine.getRack()]++;
+        mapOutputBytesPerRack[machine.getRack()] += bytes;
+        mapOutputCount++;
+        mapOutputBytes += bytes;
+        getLongRecord(jobRecordKey(JobRecordType.MAP_OUTPUT_BYTES, name)).add(bytes);
+        for (Shuffle shuffle : activeShuffles) {
+            shuffle.onMapOutput(machine.getRack(), bytes);
+        }
+        onMapProgress();
+    }
+
+    /** the map task count is only known once the input is complete, no reduce task starts before */
+    private void onMapProgress() {
+        if (! input.isComplete()) {
+            return;
+        }
+        int mapCount = mapTasksExecutor.tasks.size();
+        if (! reducersStarted && mapOutputCount >= Math.ceil(config.reduceSlowStart.get() * mapCount)) {
+            reducersStarted = true;
+            invokeEvent(config.delayAssignTaskToMachineNetwork.get(getRandom()), new SimulationEvent<>(EventType.START_REDUCERS));
+        }
+        if (! mappingDone && mapOutputCount == mapCount) {
+            mappingDone = true;
+            getLongRecord(RecordType.MAPPING_DONE).set(getTimeStamp());
+        }
+    }
+
+    private void onInputBlockWritten(DFS.DFSFile file, int block) {
+        mapTasksExecutor.addTask(input.addBlock(file, block));
+        invokeAction(config.delayAssignTaskToMachineNetwork.get(getRandom()), () -> {
+            if (submitted) {
+                mapTasksExecutor.invokeTasks();
+            }
+        });
+    }
+
+    private void onInputClosed() {
+        if (! input.isComplete()) {
+            return;
+        }
+        if (! config.pipelined.get()) {
+            submitTime = Math.max(submitTime, getTimeStamp());
+            invokeEvent(submitTime - getTimeStamp(), invokeTasksEvents.obtain());
+        }
+        onMapProgress();
+    }
+
+    private void writeOutput(Machine machine) {
+        long bytes = (long) ((double) mapOutputBytes / reduceTaskExecutor.tasks.size()
+                * config.reduceSelectivity.get(getRandom()));
+        pendingOutputWrites++;
+        output.write(machine, bytes, () -> {
+            if (-- pendingOutputWrites == 0 && finished) {
+                output.close();
+            }
+        });
+    }
+
+    /** the map outputs of a rack are fetched together in one flow, at most shuffleParallelCopies flows at a time */
+    private class Shuffle {
+
+        private final Integer reduceTask;
+        private final Machine.Task task;
+        private final Runnable onShuffled;
+        private final int[] waitingOutputs;
+        private final long[] waitingBytes;
+        private final int reducerCount;
+        private int fetchedOutputs, activeFetches;
+        private long fetchedBytes;
+        private boolean ended;
+
+        private Shuffle(Integer reduceTask, Machine.Task task, Runnable onShuffled) {
+            this.reduceTask = reduceTask;
+            this.task = task;
+            this.onShuffled = onShuffled;
+            waitingOutputs = mapOutputsPerRack.clone();
+            waitingBytes = mapOutputBytesPerRack.clone();
+            reducerCount = reduceTaskExecutor.tasks.size();
+            activeShuffles.add(this);
+            task.onEnd(t -> {
+                ended = true;
+                activeShuffles.remove(this);
+            });
+            fetch();
+        }
+
+        private void onMapOutput(int rack, long bytes) {
+            waitingOutputs[rack]++;
+            waitingBytes[rack] += bytes;
+            fetch();
+        }
+
+        private void fetch() {
+            while (activeFetches < config.shuffleParallelCopies.get()) {
+                int rack = - 1;
+                for (int r = 0; r < waitingOutputs.length; r++) {
+                    if (waitingOutputs[r] > 0 && (rack < 0 || waitingOutputs[r] > waitingOutputs[rack])) {
+                        rack = r;
                     }
                 }
+                if (rack < 0) {
+                    return;
+                }
+                int outputs = waitingOutputs[rack];
+                long bytes = waitingBytes[rack] / reducerCount;
+                waitingOutputs[rack] = 0;
+                waitingBytes[rack] = 0;
+                activeFetches++;
+                task.transferFromRack(rack, bytes, () -> onFetched(outputs, bytes));
             }
         }
+
+        private void onFetched(int outputs, long bytes) {
+            if (ended) {
+                return;
+            }
+            activeFetches--;
+            fetchedOutputs += outputs;
+            fetchedBytes += bytes;
+            if (fetchedOutputs < mapTasksExecutor.tasks.size()) {
+                fetch();
+                return;
+            }
+            activeShuffles.remove(this);
+            if (shuffledReducers.add(reduceTask)) {
+                getIntRecord(jobRecordKey(JobRecordType.SHUFFLED_REDUCERS, name)).add(1);
+                if (shuffledReducers.size() == reduceTaskExecutor.tasks.size()) {
+                    getLongRecord(RecordType.SHUFFLE_DONE).set(getTimeStamp());
+                }
+            }
+            long mergeDuration = config.shuffleDuration.get(getRandom())
+                    + processingTime(fetchedBytes, config.mergeThroughput.get());
+            task.action(mergeDuration, t -> onShuffled.run());
+        }
+    }
+
+    /** map task {@code i} reads the {@code i}th block that became readable */
+    private static class MapInput {
+
+        private final List<DFS.DFSFile> files = new ArrayList<>();
+        private final List<DFS.DFSFile> taskFiles = new ArrayList<>();
+        private final List<Integer> taskBlocks = new ArrayList<>();
+        /** map task per block index of every file, null while the block is written */
+        private final Map<DFS.DFSFile, List<Integer>> blockTasks = new HashMap<>();
+
+        void addFile(DFS.DFSFile file) {
+            files.add(file);
+            blockTasks.put(file, new ArrayList<>());
+        }
+
+        Integer addBlock(DFS.DFSFile file, int block) {
+            if (! blockTasks.containsKey(file)) {
+                addFile(file);
+            }
+            List<Integer> tasks = blockTasks.get(file);
+            while (tasks.size() <= block) {
+                tasks.add(null);
+            }
+            Integer taskIndex = taskFiles.size();
+            tasks.set(block, taskIndex);
+            taskFiles.add(file);
+            taskBlocks.add(block);
+            return taskIndex;
+        }
+
+        Integer getTask(DFS.DFSFile file, int block) {
+            List<Integer> tasks = blockTasks.get(file);
+            return block < tasks.size() ? tasks.get(block) : null;
+        }
+
+        boolean isComplete() {
+            for (DFS.DFSFile file : files) {
+                if (! file.isClosed()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int size() {
+            return taskFiles.size();
+        }
+
+        long getBlockSize(Integer taskIndex) {
+            return taskFiles.get(taskIndex).getBlockSize(taskBlocks.get(taskIndex));
+        }
+
+        Locality getLocality(Integer taskIndex, Machine machine) {
+            return taskFiles.get(taskIndex).getLocality(taskBlocks.get(taskIndex), machine);
+        }
+
+        List<Machine> getReadSources(Integer taskIndex, Machine machine) {
+            return taskFiles.get(taskIndex).getReadSources(taskBlocks.get(taskIndex), machine);
+        }
+
+        long getUnitSize(Integer taskIndex) {
+            return taskFiles.get(taskIndex).getUnitSize(taskBlocks.get(taskIndex));
+        }
+
+        boolean isDegraded(Integer taskIndex) {
+            return taskFiles.get(taskIndex).isDegraded(taskBlocks.get(taskIndex));
+        }
+
+        Machine getFreeMachine(Integer taskIndex, Predicate<Machine> filter) {
+            return taskFiles.get(taskIndex).getFreeMachineForBlock(taskBlocks.get(taskIndex), filter);
+        }
     }
 
     private class TaskGroup<TASK_STATE> {
 
         private final Map<TASK_STATE, Set<Integer>> stateToTask = new HashMap<>();
         private final Map<Integer, TASK_STATE> taskToState = new HashMap<>();
+        private final Map<TASK_STATE, IntRecord> stateRecords = new HashMap<>();
 
         private TaskGroup(Integer start, Integer taskCount, TASK_STATE[] states, TASK_STATE idleState) {
-            for (TASK_STATE value : states) stateToTask.put(value, new HashSet<>());
+            for (TASK_STATE value : states) {
+                stateToTask.put(value, new HashSet<>());
+                stateRecords.put(value, getIntRecord(value));
+            }
 
             Set<Integer> tasks = new HashSet<>(taskCount);
             for (Integer i = 0; i < taskCount; i++) {
@@ -287,22 +927,28 @@ public class SimpleComputation extends Simulatable<SimpleComputation.EventType>
                 taskToState.put(start + i, idleState);
             }
             stateToTask.put(idleState, tasks);
-            updateRecordValue(idleState, i -> i + taskCount, 0);
+            stateRecords.get(idleState).add(taskCount);
         }
 
         public Set<Integer> getTasks(TASK_STATE type) {
             return stateToTask.get(type);
         }
 
+        void addTask(Integer task, TASK_STATE state) {
+            taskToState.put(task, state);
+            stateToTask.get(state).add(task);
+            stateRecords.get(state).add(1);
+        }
+
         @SafeVarargs
         public final void changeTaskState(Integer task, TASK_STATE state, TASK_STATE... expectedStates) {
             TASK_STATE previousState = taskToState.get(task);
             if (expectedStates.length == 0 || isExpectedState(previousState, expectedStates)) {
-                updateRecordValue(previousState, i -> i - 1, 0);
+                stateRecords.get(previousState).add(- 1);
                 stateToTask.get(previousState).remove(task);
                 stateToTask.get(state).add(task);
                 taskToState.put(task, state);
-                updateRecordValue(state, i -> i + 1, 0);
+                stateRecords.get(state).add(1);
             }
         }
 
@@ -321,7 +967,7 @@ public class SimpleComputation extends Simulatable<SimpleComputation.EventType>
     }
 
     public enum EventType implements SimulationEventType {
-        INVOKE_TASKS, TASK_SUCCESS, TASK_FAIL, NOT_INVOKED, INVOKE_TASKS_FOR_MACHINE, SHUFFLE_DONE
+        INVOKE_TASKS, TASK_SUCCESS, TASK_FAIL, NOT_INVOKED, INVOKE_TASKS_FOR_MACHINE, START_REDUCERS
     }
 
     public enum MapTaskState {
@@ -333,7 +979,11 @@ public class SimpleComputation extends Simulatable<SimpleComputation.EventType>
     }
 
     public enum RecordType{
-        MAPPING_DONE, SHUFFLE_DONE
+        MAPPING_DONE, SHUFFLE_DONE, SPECULATIVE_INSTANCES, SPECULATIVE_USEFUL_TIME, SPECULATIVE_WASTED_TIME
+    }
+
+    public enum JobRecordType {
+        WAIT, MAKESPAN, SHUFFLED_REDUCERS, MAP_OUTPUT_BYTES
     }
 
 }
@@ -1,5 +1,8 @@
 package com.melzner.mapreduce.scenario;
 
+import com.melzner.mapreduce.cluster.BlockPlacementPolicyType;
+import com.melzner.mapreduce.cluster.ClusterSchedulerType;
+import com.melzner.mapreduce.cluster.ErasureCoding;
 import com.melzner.xmlutil.MapXML;
 import com.melzner.xmlutil.XMLValue;
 
@@ -12,12 +15,62 @@ public class ClusterConfig {
     public final XMLValue<Long> maxSingleDiskSize = new XMLValue<>(1024L * 1024 * 1024 * 1024 * 1024 * 1024, ScenarioConfig.CLUSTER, ScenarioConfig::parseDataSize);
     @MapXML("blockSize")
     public final XMLValue<Long> dfsBlockSize = new XMLValue<>(64L * 1024 * 1024, ScenarioConfig.DFS, ScenarioConfig::parseDataSize);
+    /** replicas stored of every block, ignored for erasure coded blocks */
+    @MapXML("replication")
+    public final XMLValue<Integer> dfsReplication = new XMLValue<>(3, ScenarioConfig.DFS);
+    /** code striping every block into data and parity fragments instead of replicating it, e.g. "RS-6-3" */
+    @MapXML("erasureCoding")
+    public final XMLValue<ErasureCoding> dfsErasureCoding = new XMLValue<>(ErasureCoding.NONE, ScenarioConfig.DFS, ErasureCoding::parse);
+    /** policy choosing the machines storing the replicas or fragments of a block */
+    @MapXML("blockPlacement")
+    public final XMLValue<BlockPlacementPolicyType> dfsBlockPlacement = new XMLValue<>(BlockPlacementPolicyType.LEAST_USED, ScenarioConfig.DFS, BlockPlacementPolicyType::parse);
+    /** copies of lost replicas or fragments a machine sends at once, 0 replaces them right away without traffic */
+    @MapXML("reReplicationStreams")
+    public final XMLValue<Integer> reReplicationStreams = new XMLValue<>(0, ScenarioConfig.DFS);
+    /** bytes per second a machine sends re-replicating blocks, 0 for no limit besides the network */
+    @MapXML("reReplicationBandwidth")
+    public final XMLValue<Long> reReplicationBandwidth = new XMLValue<>(0L, ScenarioConfig.DFS, ScenarioConfig::parseDataSize);
+    /** bytes per second all machines send re-replicating blocks together, 0 for no limit besides the network */
+    @MapXML("reReplicationClusterBandwidth")
+    public final XMLValue<Long> reReplicationClusterBandwidth = new XMLValue<>(0L, ScenarioConfig.DFS, ScenarioConfig::parseDataSize);
     @MapXML("machineFailProbability")
     public final XMLValue<Double> machineFailProbability = new XMLValue<>(0.01, ScenarioConfig.CLUSTER);
     @MapXML("stragglingFactor")
     public final XMLValue<Double> stragglingFactor = new XMLValue<>(1.0, ScenarioConfig.CLUSTER);
     @MapXML("stragglerProbability")
     public final XMLValue<Double> stragglerProbability = new XMLValue<>(0d, ScenarioConfig.CLUSTER);
-    @MapXML("compensateStragglerThreshold")
-    public final XMLValue<Integer> compensateStragglerThreshold = new XMLValue<>(0, ScenarioConfig.CLUSTER);
+    /** fraction of the alive machines that may run speculative task instances at once, 0 disables speculation */
+    @MapXML("speculativeCap")
+    public final XMLValue<Double> speculativeCap = new XMLValue<>(0d, ScenarioConfig.CLUSTER);
+    /** fraction of the running tasks with the lowest progress rates that may be speculated */
+    @MapXML("slowTaskThreshold")
+    public final XMLValue<Double> slowTaskThreshold = new XMLValue<>(0.25, ScenarioConfig.CLUSTER);
+    /** fraction of the machines with the highest observed slowdown that get no speculative instances */
+    @MapXML("slowNodeThreshold")
+    public final XMLValue<Double> slowNodeThreshold = new XMLValue<>(0.25, ScenarioConfig.CLUSTER);
+    /** policy sharing the machines between concurrent computations */
+    @MapXML("scheduler")
+    public final XMLValue<ClusterSchedulerType> scheduler = new XMLValue<>(ClusterSchedulerType.FIFO, ScenarioConfig.CLUSTER, ClusterSchedulerType::parse);
+    /** capacity scheduler queues as name:capacity pairs separated by ';', e.g. "production:0.7;research:0.3" */
+    @MapXML("schedulerQueues")
+    public final XMLValue<String> schedulerQueues = new XMLValue<>("default:1", ScenarioConfig.CLUSTER);
+    @MapXML("machinesPerRack")
+    public final XMLValue<Integer> machinesPerRack = new XMLValue<>(40, ScenarioConfig.CLUSTER);
+    /** bytes per second of the link between a machine and its top-of-rack switch, per direction */
+    @MapXML("machineBandwidth")
+    public final XMLValue<Long> machineBandwidth = new XMLValue<>(125L * 1024 * 1024, ScenarioConfig.NETWORK, ScenarioConfig::parseDataSize);
+    /** bytes per second of the link between a top-of-rack switch and the core switch, per direction */
+    @MapXML("rackUplinkBandwidth")
+    public final XMLValue<Long> rackUplinkBandwidth = new XMLValue<>(1250L * 1024 * 1024, ScenarioConfig.NETWORK, ScenarioConfig::parseDataSize);
+    /** bytes per second the core switch forwards in total, 0 for a non-blocking core */
+    @MapXML("coreBandwidth")
+    public final XMLValue<Long> coreBandwidth = new XMLValue<>(0L, ScenarioConfig.NETWORK, ScenarioConfig::parseDataSize);
+    /** cores of a machine, the containers running on a machine share its cores, memory and disk */
+    @MapXML("machineCores")
+    public final XMLValue<Double> machineCores = new XMLValue<>(1.0, ScenarioConfig.CLUSTER);
+    @MapXML("machineMemory")
+    public final XMLValue<Long> machineMemory = new XMLValue<>(1024L * 1024 * 1024, ScenarioConfig.CLUSTER, ScenarioConfig::parseDataSize);
+    /** bytes per second a machine's disk reads, shared by the concurrent reads, 0 for an unlimited disk */
+    @MapXML("machineDiskBandwidth")
+    public final XMLValue<Long> machineDiskBandwidth = new XMLValue<>(0L, ScenarioConfig.CLUSTER, ScenarioConfig::parseDataSize);
 }
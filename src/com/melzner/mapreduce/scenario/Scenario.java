@@ -1,10 +1,18 @@
 package com.melzner.mapreduce.scenario;
 
 import com.melzner.mapreduce.cluster.Cluster;
+import com.melzner.mapreduce.computation.JobGraph;
 import com.melzner.mapreduce.computation.SimpleComputation;
+import com.melzner.mapreduce.simulation.RecordFileSink;
+import com.melzner.mapreduce.simulation.RecordMerger;
 import com.melzner.mapreduce.simulation.Simulation;
 import com.melzner.mapreduce.simulation.SimulationResult;
 
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+
 public class Scenario {
 
     private final ScenarioConfig config;
@@ -15,15 +23,48 @@ public class Scenario {
 
 
     public SimulationResult simulate() {
-        Simulation simulation = new Simulation();
+        return createSimulation().run();
+    }
+
+    /** replica seeds are derived from the scenario seed, so the averaged result is reproducible */
+    public <T> SimulationResult simulate(int times, BiFunction<T, T, T> transformation) {
+        return simulate(times, RecordMerger.boxing(transformation));
+    }
+
+    public SimulationResult simulate(int times, RecordMerger merger) {
+        SplittableRandom seeds = new SplittableRandom(config.simulationConfig.seed.get());
+        long[] replicaSeeds = new long[times];
+        for (int i = 0; i < times; i++) {
+            replicaSeeds[i] = seeds.nextLong();
+        }
+        return SimulationResult.average(replica -> createSimulation(replicaSeeds[replica]), times, merger,
+                ForkJoinPool.commonPool());
+    }
+
+    /** replications always record in memory, only a single simulation streams to the record file */
+    public Simulation createSimulation() {
+        Simulation simulation = createSimulation(config.simulationConfig.seed.get());
+        String recordFile = config.simulationConfig.recordFile.get();
+        if (! recordFile.isEmpty()) {
+            simulation.setRecordSink(RecordFileSink.factory(Paths.get(recordFile)));
+        }
+        return simulation;
+    }
+
+    private Simulation createSimulation(long seed) {
+        Simulation simulation = new Simulation()
+                .setSeed(seed)
+                .setEventSchedulerType(config.simulationConfig.eventScheduler.get())
+                .setRecordAggregation(config.simulationConfig.recordAggregation.get(),
+                        config.simulationConfig.recordBucketWidth.get());
 
-        Cluster cluster = new Cluster(config.clusterConfig);
+        Cluster cluster = new Cluster(config.clusterConfig, seed);
         simulation.add(cluster);
 
-        for (SimpleComputationConfig config : config.simpleComputations) {
-            simulation.add(new SimpleComputation(cluster, config));
+        for (SimpleComputation computation : new JobGraph(cluster, config.simpleComputations).getStages()) {
+            simulation.add(computation);
         }
 
-        return simulation.run();
+        return simulation;
     }
 }
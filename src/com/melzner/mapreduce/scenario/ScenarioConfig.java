@@ -19,9 +19,12 @@ public class ScenarioConfig extends XMLAdapter {
     public static final XMLElement SIMULATION = new XMLElement("simulation");
     public static final XMLElement CLUSTER = new XMLElement("cluster", SIMULATION);
     public static final XMLElement DFS = new XMLElement("dfs", CLUSTER);
+    public static final XMLElement NETWORK = new XMLElement("network", CLUSTER);
     public static final XMLElement COMPUTATION = new XMLElement("computation", SIMULATION);
     public static final XMLElement MASTER = new XMLElement("master", COMPUTATION);
 
+    @MapXMLContainer
+    public final SimulationConfig simulationConfig = new SimulationConfig();
     @MapXMLContainer
     public final ClusterConfig clusterConfig = new ClusterConfig();
     @MapXMLContainer
@@ -116,7 +119,7 @@ public class ScenarioConfig extends XMLAdapter {
     }
 
     public Cluster createCluster() {
-        return new Cluster(clusterConfig);
+        return new Cluster(clusterConfig, simulationConfig.seed.get());
     }
 
 }
@@ -9,8 +9,61 @@ import java.util.concurrent.TimeUnit;
 public class SimpleComputationConfig {
     public static final XMLElement MASTER = new XMLElement("master");
 
+    /** name of the computation in its records, "computation" followed by its position if empty */
+    @MapXML("name")
+    public final XMLValue<String> name = new XMLValue<>("", String::trim);
+    /** comma separated names of earlier computations whose reduce output the computation reads as its input */
+    @MapXML("inputs")
+    public final XMLValue<String> inputs = new XMLValue<>("", String::trim);
+    /** whether map tasks run on the input blocks written so far instead of waiting for complete inputs */
+    @MapXML("pipelined")
+    public final XMLValue<Boolean> pipelined = new XMLValue<>(false, Boolean::valueOf);
+    @MapXML("submitTime")
+    public final XMLValue<Long> submitTime = new XMLValue<>(0L, ScenarioConfig::parseTime);
+    @MapXML("schedulerWeight")
+    public final XMLValue<Double> schedulerWeight = new XMLValue<>(1.0, Double::valueOf);
+    @MapXML("schedulerQueue")
+    public final XMLValue<String> schedulerQueue = new XMLValue<>("default", String::trim);
+    @MapXML("taskCores")
+    public final XMLValue<Double> taskCores = new XMLValue<>(1.0, Double::valueOf);
+    @MapXML("taskMemory")
+    public final XMLValue<Long> taskMemory = new XMLValue<>(1024L * 1024 * 1024, ScenarioConfig::parseDataSize);
+    /** time a map task waits for a free machine holding its block before it may run on a machine of the same rack */
+    @MapXML("nodeLocalityWait")
+    public final XMLValue<Long> nodeLocalityWait = new XMLValue<>(TimeUnit.SECONDS.toNanos(3), MASTER, ScenarioConfig::parseTime);
+    /** further time a map task waits for a machine of the same rack before it may run on any machine */
+    @MapXML("rackLocalityWait")
+    public final XMLValue<Long> rackLocalityWait = new XMLValue<>(TimeUnit.SECONDS.toNanos(3), MASTER, ScenarioConfig::parseTime);
+    /** fraction of the map tasks that has to be done before the reduce tasks start fetching map outputs */
+    @MapXML("reduceSlowStart")
+    public final XMLValue<Double> reduceSlowStart = new XMLValue<>(1.0, MASTER, Double::valueOf);
+    /** fraction of its machines a computation may use for reduce tasks while map tasks are left */
+    @MapXML("reduceRampUpLimit")
+    public final XMLValue<Double> reduceRampUpLimit = new XMLValue<>(0.5, MASTER, Double::valueOf);
+    /** concurrent fetches of map outputs per reduce task */
+    @MapXML("shuffleParallelCopies")
+    public final XMLValue<Integer> shuffleParallelCopies = new XMLValue<>(5, MASTER);
+    /** time a reduce task needs to merge the fetched map outputs on top of the bytes it merges */
     @MapXML("shuffleDuration")
     public final XMLValue<Long> shuffleDuration = new XMLValue<>(TimeUnit.MILLISECONDS.toNanos(30), ScenarioConfig::parseTime);
+    /** bytes of map output per byte of map input, drawn once per map task */
+    @MapXML("mapSelectivity")
+    public final XMLValue<Double> mapSelectivity = new XMLValue<>(1.0, Double::valueOf);
+    /** fraction of the map output the combiner leaves, 1 runs no combiner */
+    @MapXML("combinerRatio")
+    public final XMLValue<Double> combinerRatio = new XMLValue<>(1.0, Double::valueOf);
+    /** bytes per second of map output the combiner processes */
+    @MapXML("combinerThroughput")
+    public final XMLValue<Long> combinerThroughput = new XMLValue<>(200L * 1024 * 1024, ScenarioConfig::parseDataSize);
+    /** bytes per second a map task sorts and spills its combined output to disk */
+    @MapXML("spillThroughput")
+    public final XMLValue<Long> spillThroughput = new XMLValue<>(100L * 1024 * 1024, ScenarioConfig::parseDataSize);
+    /** bytes per second a reduce task merges its fetched input */
+    @MapXML("mergeThroughput")
+    public final XMLValue<Long> mergeThroughput = new XMLValue<>(100L * 1024 * 1024, ScenarioConfig::parseDataSize);
+    /** bytes of reduce output per byte of reduce input, drawn once per reduce task */
+    @MapXML("reduceSelectivity")
+    public final XMLValue<Double> reduceSelectivity = new XMLValue<>(1.0, Double::valueOf);
     @MapXML("mapComputationDuration")
     public final XMLValue<Long> mapComputationDuration = new XMLValue<>(TimeUnit.MILLISECONDS.toNanos(30), ScenarioConfig::parseTime);
     @MapXML("reduceComputationDuration")
@@ -0,0 +1,24 @@
+package com.melzner.mapreduce.scenario;
+
+import com.melzner.mapreduce.simulation.EventSchedulerType;
+import com.melzner.mapreduce.simulation.RecordAggregation;
+import com.melzner.xmlutil.MapXML;
+import com.melzner.xmlutil.XMLValue;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+public class SimulationConfig {
+    @MapXML("eventScheduler")
+    public final XMLValue<EventSchedulerType> eventScheduler = new XMLValue<>(EventSchedulerType.CALENDAR_QUEUE, ScenarioConfig.SIMULATION, EventSchedulerType::parse);
+    /** root seed of all random streams, a random seed is chosen if none is configured */
+    @MapXML("seed")
+    public final XMLValue<Long> seed = new XMLValue<>(ThreadLocalRandom.current().nextLong(), ScenarioConfig.SIMULATION);
+    /** file the record history of a single run is streamed to, records are kept in memory if empty */
+    @MapXML("recordFile")
+    public final XMLValue<String> recordFile = new XMLValue<>("", ScenarioConfig.SIMULATION);
+    /** down-sampling of all record histories into buckets of recordBucketWidth nanoseconds */
+    @MapXML("recordAggregation")
+    public final XMLValue<RecordAggregation> recordAggregation = new XMLValue<>(RecordAggregation.NONE, ScenarioConfig.SIMULATION, RecordAggregation::parse);
+    @MapXML("recordBucketWidth")
+    public final XMLValue<Long> recordBucketWidth = new XMLValue<>(0L, ScenarioConfig.SIMULATION);
+}
@@ -0,0 +1,196 @@
+package com.melzner.mapreduce.simulation;
+
+/** Calendar queue (R. Brown, 1988) with amortized O(1) insert and poll. */
+class CalendarQueueScheduler implements EventScheduler {
+
+    private static final int MIN_BUCKET_COUNT = 16;
+    private static final int WIDTH_SAMPLE_SIZE = 64;
+    private static final int INITIAL_WIDTH_SHIFT = 20;
+
+    private SchedulerEntry[] heads;
+    private SchedulerEntry[] tails;
+    private int mask;
+    private int widthShift;
+    private int size;
+    /** bucket of the current day and the first timestamp of that day, no pending entry lies before it */
+    private int currentBucket;
+    private long currentStart;
+
+    CalendarQueueScheduler() {
+        init(MIN_BUCKET_COUNT, INITIAL_WIDTH_SHIFT);
+    }
+
+    private void init(int bucketCount, int widthShift) {
+        heads = new SchedulerEntry[bucketCount];
+        tails = new SchedulerEntry[bucketCount];
+        mask = bucketCount - 1;
+        this.widthShift = widthShift;
+        size = 0;
+        moveTo(0);
+    }
+
+    private void moveTo(long timestamp) {
+        currentStart = (timestamp >>> widthShift) << widthShift;
+        currentBucket = (int) ((timestamp >>> widthShift) & mask);
+    }
+
+    @Override
+    public void add(SchedulerEntry entry) {
+        if (size == 0 || entry.timestamp < currentStart) {
+            moveTo(entry.timestamp);
+        }
+        insert(entry);
+        if (size > 2 * heads.length) {
+            resize(heads.length * 2);
+        }
+    }
+
+    private void insert(SchedulerEntry entry) {
+        int i = (int) ((entry.timestamp >>> widthShift) & mask);
+        entry.next = null;
+        SchedulerEntry tail = tails[i];
+        if (tail == null) {
+            heads[i] = tails[i] = entry;
+        } else if (SchedulerEntry.compare(tail, entry) <= 0) {
+            tail.next = entry;
+            tails[i] = entry;
+        } else if (SchedulerEntry.compare(entry, heads[i]) < 0) {
+            entry.next = heads[i];
+            heads[i] = entry;
+        } else {
+            SchedulerEntry previous = heads[i];
+            while (SchedulerEntry.compare(previous.next, entry) <= 0) {
+                previous = previous.next;
+            }
+            entry.next = previous.next;
+            previous.next = entry;
+        }
+        size++;
+    }
+
+    @Override
+    public SchedulerEntry peek() {
+        if (size == 0) {
+            return null;
+        }
+        long width = 1L << widthShift;
+        int i = currentBucket;
+        long top = currentStart + width;
+        for (int n = 0; n < heads.length; n++) {
+            SchedulerEntry head = heads[i];
+            if (head != null && head.timestamp < top) {
+                currentBucket = i;
+                currentStart = top - width;
+                return head;
+            }
+            i = (i + 1) & mask;
+            top += width;
+        }
+        // no entry within a whole year, fall back to a direct search over all bucket heads
+        SchedulerEntry min = null;
+        for (SchedulerEntry head : heads) {
+            if (head != null && (min == null || SchedulerEntry.compare(head, min) < 0)) {
+                min = head;
+            }
+        }
+        //noinspection ConstantConditions
+        moveTo(min.timestamp);
+        return min;
+    }
+
+    @Override
+    public SchedulerEntry poll() {
+        SchedulerEntry first = removeFirst();
+        if (size < heads.length / 2 && heads.length > MIN_BUCKET_COUNT) {
+            resize(heads.length / 2);
+        }
+        return first;
+    }
+
+    private SchedulerEntry removeFirst() {
+        SchedulerEntry first = peek();
+        if (first != null) {
+            heads[currentBucket] = first.next;
+            if (first.next == null) {
+                tails[currentBucket] = null;
+            }
+            first.next = null;
+            size--;
+        }
+        return first;
+    }
+
+    @Override
+    public boolean remove(SchedulerEntry entry) {
+        int i = (int) ((entry.timestamp >>> widthShift) & mask);
+        SchedulerEntry previous = null;
+        for (SchedulerEntry current = heads[i]; current != null; current = current.next) {
+            if (current == entry) {
+                if (previous == null) {
+                    heads[i] = entry.next;
+                } else {
+                    previous.next = entry.next;
+                }
+                if (tails[i] == entry) {
+                    tails[i] = previous;
+                }
+                entry.next = null;
+                size--;
+                if (size < heads.length / 2 && heads.length > MIN_BUCKET_COUNT) {
+                    resize(heads.length / 2);
+                }
+                return true;
+            } else if (current.timestamp > entry.timestamp) {
+                return false;
+            }
+            previous = current;
+        }
+        return false;
+    }
+
+    private void resize(int bucketCount) {
+        SchedulerEntry[] sample = new SchedulerEntry[Math.min(size, WIDTH_SAMPLE_SIZE)];
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = removeFirst();
+        }
+        SchedulerEntry[] oldHeads = heads;
+
+        init(bucketCount, estimateWidthShift(sample));
+        if (sample.length > 0) {
+            moveTo(sample[0].timestamp);
+        }
+        for (SchedulerEntry entry : sample) {
+            insert(entry);
+        }
+        for (SchedulerEntry entry : oldHeads) {
+            while (entry != null) {
+                SchedulerEntry next = entry.next;
+                insert(entry);
+                entry = next;
+            }
+        }
+    }
+
+    /** bucket width is three times the average gap between the distinct timestamps of the sample */
+    private int estimateWidthShift(SchedulerEntry[] sample) {
+        long gapSum = 0;
+        int gapCount = 0;
+        for (int i = 1; i < sample.length; i++) {
+            long gap = sample[i].timestamp - sample[i - 1].timestamp;
+            if (gap != 0) {
+                gapSum += gap;
+                gapCount++;
+            }
+        }
+        if (gapCount == 0) {
+            return widthShift;
+        }
+        long width = Math.max(3 * gapSum / gapCount, 1);
+        return 63 - Long.numberOfLeadingZeros(width);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
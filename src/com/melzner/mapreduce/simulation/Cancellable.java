@@ -0,0 +1,9 @@
+package com.melzner.mapreduce.simulation;
+
+public interface Cancellable {
+
+    /** @return false if the action already ran or was cancelled before */
+    boolean cancel();
+
+    boolean isPending();
+}
@@ -0,0 +1,81 @@
+package com.melzner.mapreduce.simulation;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+public class DoubleRecord extends WritableRecord {
+
+    private double[][] valueChunks = new double[1][];
+    private double value;
+
+    DoubleRecord(Simulation.SimulationSession session, Object key) {
+        super(session, key);
+    }
+
+    public double get() {
+        return value;
+    }
+
+    public void set(double value) {
+        if (size == 0 || Double.doubleToLongBits(value) != Double.doubleToLongBits(this.value)) {
+            double previous = this.value;
+            this.value = value;
+            if (isAggregated()) {
+                aggregate(previous, value);
+                return;
+            }
+            int index = entryIndex(currentTimestamp());
+            valueChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = value;
+        }
+    }
+
+    public void add(double delta) {
+        set(value + delta);
+    }
+
+    @Override
+    public double getDouble(int index) {
+        return valueChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    @Override
+    public Object getValue(int index) {
+        return getDouble(index);
+    }
+
+    @Override
+    void allocateValueChunk(int chunk) {
+        if (chunk == valueChunks.length) {
+            valueChunks = Arrays.copyOf(valueChunks, chunk * 2);
+        }
+        valueChunks[chunk] = new double[CHUNK_SIZE];
+    }
+
+    @Override
+    void storeAggregate(int index, double value) {
+        valueChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    <T> void update(Function<T, T> transformation, T def) {
+        set((Double) transformation.apply(size == 0 ? def : (T) (Double) value));
+    }
+
+    private void append(long timestamp, double value) {
+        this.value = value;
+        int index = newEntryIndex(timestamp);
+        valueChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = value;
+    }
+
+    @Override
+    void appendMerged(long timestamp, Record record1, int index1, int weight1, Record record2, int index2, int weight2,
+                      RecordMerger merger) {
+        append(timestamp, merger.merge(record1.getDouble(index1), weight1, record2.getDouble(index2), weight2));
+    }
+
+    @Override
+    void appendCopy(long timestamp, Record source, int index) {
+        append(timestamp, source.getDouble(index));
+    }
+}
@@ -0,0 +1,20 @@
+package com.melzner.mapreduce.simulation;
+
+interface EventScheduler {
+
+    void add(SchedulerEntry entry);
+
+    SchedulerEntry poll();
+
+    SchedulerEntry peek();
+
+    /** @return false if {@code entry} isn't pending in this scheduler */
+    boolean remove(SchedulerEntry entry);
+
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.melzner.mapreduce.simulation;
+
+import java.util.Locale;
+import java.util.function.Supplier;
+
+public enum EventSchedulerType {
+    /** binary heap, O(log n) insert and poll */
+    HEAP(HeapScheduler::new),
+    /** calendar queue, amortized O(1) insert and poll for timestamp-clustered events */
+    CALENDAR_QUEUE(CalendarQueueScheduler::new);
+
+    private final Supplier<EventScheduler> constructor;
+
+    EventSchedulerType(Supplier<EventScheduler> constructor) {
+        this.constructor = constructor;
+    }
+
+    EventScheduler newScheduler() {
+        return constructor.get();
+    }
+
+    public static EventSchedulerType parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,99 @@
+package com.melzner.mapreduce.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Binary heap of scheduler entries, every entry keeps its position in {@link SchedulerEntry#index}, so a cancelled
+ * entry is removed in O(log n) instead of staying in the heap until it's polled.
+ */
+class HeapScheduler implements EventScheduler {
+
+    private SchedulerEntry[] heap = new SchedulerEntry[64];
+    private int size;
+
+    @Override
+    public void add(SchedulerEntry entry) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        siftUp(size++, entry);
+    }
+
+    @Override
+    public SchedulerEntry poll() {
+        if (size == 0) {
+            return null;
+        }
+        SchedulerEntry first = heap[0];
+        removeAt(0);
+        return first;
+    }
+
+    @Override
+    public SchedulerEntry peek() {
+        return size == 0 ? null : heap[0];
+    }
+
+    @Override
+    public boolean remove(SchedulerEntry entry) {
+        int i = entry.index;
+        if (i < 0 || i >= size || heap[i] != entry) {
+            return false;
+        }
+        removeAt(i);
+        return true;
+    }
+
+    private void removeAt(int i) {
+        heap[i].index = - 1;
+        SchedulerEntry last = heap[--size];
+        heap[size] = null;
+        if (i < size) {
+            siftDown(i, last);
+            if (heap[i] == last) {
+                siftUp(i, last);
+            }
+        }
+    }
+
+    private void siftUp(int i, SchedulerEntry entry) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            SchedulerEntry parentEntry = heap[parent];
+            if (SchedulerEntry.compare(entry, parentEntry) >= 0) {
+                break;
+            }
+            heap[i] = parentEntry;
+            parentEntry.index = i;
+            i = parent;
+        }
+        heap[i] = entry;
+        entry.index = i;
+    }
+
+    private void siftDown(int i, SchedulerEntry entry) {
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            SchedulerEntry childEntry = heap[child];
+            int right = child + 1;
+            if (right < size && SchedulerEntry.compare(heap[right], childEntry) < 0) {
+                child = right;
+                childEntry = heap[right];
+            }
+            if (SchedulerEntry.compare(entry, childEntry) <= 0) {
+                break;
+            }
+            heap[i] = childEntry;
+            childEntry.index = i;
+            i = child;
+        }
+        heap[i] = entry;
+        entry.index = i;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,89 @@
+package com.melzner.mapreduce.simulation;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+public class IntRecord extends WritableRecord {
+
+    private int[][] valueChunks = new int[1][];
+    private int value;
+
+    IntRecord(Simulation.SimulationSession session, Object key) {
+        super(session, key);
+    }
+
+    public int get() {
+        return value;
+    }
+
+    public void set(int value) {
+        if (size == 0 || value != this.value) {
+            int previous = this.value;
+            this.value = value;
+            if (isAggregated()) {
+                aggregate(previous, value);
+                return;
+            }
+            int index = entryIndex(currentTimestamp());
+            valueChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = value;
+        }
+    }
+
+    public void add(int delta) {
+        set(value + delta);
+    }
+
+    public int getInt(int index) {
+        return valueChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    @Override
+    public double getDouble(int index) {
+        return getInt(index);
+    }
+
+    @Override
+    public Object getValue(int index) {
+        return getInt(index);
+    }
+
+    @Override
+    void allocateValueChunk(int chunk) {
+        if (chunk == valueChunks.length) {
+            valueChunks = Arrays.copyOf(valueChunks, chunk * 2);
+        }
+        valueChunks[chunk] = new int[CHUNK_SIZE];
+    }
+
+    @Override
+    void storeAggregate(int index, double value) {
+        valueChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = (int) Math.round(value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    <T> void update(Function<T, T> transformation, T def) {
+        set((Integer) transformation.apply(size == 0 ? def : (T) (Integer) value));
+    }
+
+    private void append(long timestamp, int value) {
+        this.value = value;
+        int index = newEntryIndex(timestamp);
+        valueChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = value;
+    }
+
+    @Override
+    void appendMerged(long timestamp, Record record1, int index1, int weight1, Record record2, int index2, int weight2,
+                      RecordMerger merger) {
+        append(timestamp, merger.merge(getInt(record1, index1), weight1, getInt(record2, index2), weight2));
+    }
+
+    @Override
+    void appendCopy(long timestamp, Record source, int index) {
+        append(timestamp, getInt(source, index));
+    }
+
+    private static int getInt(Record record, int index) {
+        return record instanceof IntRecord ? ((IntRecord) record).getInt(index) : (Integer) record.getValue(index);
+    }
+}
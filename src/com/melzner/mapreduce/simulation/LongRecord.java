@@ -0,0 +1,89 @@
+package com.melzner.mapreduce.simulation;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+public class LongRecord extends WritableRecord {
+
+    private long[][] valueChunks = new long[1][];
+    private long value;
+
+    LongRecord(Simulation.SimulationSession session, Object key) {
+        super(session, key);
+    }
+
+    public long get() {
+        return value;
+    }
+
+    public void set(long value) {
+        if (size == 0 || value != this.value) {
+            long previous = this.value;
+            this.value = value;
+            if (isAggregated()) {
+                aggregate(previous, value);
+                return;
+            }
+            int index = entryIndex(currentTimestamp());
+            valueChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = value;
+        }
+    }
+
+    public void add(long delta) {
+        set(value + delta);
+    }
+
+    public long getLong(int index) {
+        return valueChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    @Override
+    public double getDouble(int index) {
+        return getLong(index);
+    }
+
+    @Override
+    public Object getValue(int index) {
+        return getLong(index);
+    }
+
+    @Override
+    void allocateValueChunk(int chunk) {
+        if (chunk == valueChunks.length) {
+            valueChunks = Arrays.copyOf(valueChunks, chunk * 2);
+        }
+        valueChunks[chunk] = new long[CHUNK_SIZE];
+    }
+
+    @Override
+    void storeAggregate(int index, double value) {
+        valueChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = Math.round(value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    <T> void update(Function<T, T> transformation, T def) {
+        set((Long) transformation.apply(size == 0 ? def : (T) (Long) value));
+    }
+
+    private void append(long timestamp, long value) {
+        this.value = value;
+        int index = newEntryIndex(timestamp);
+        valueChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = value;
+    }
+
+    @Override
+    void appendMerged(long timestamp, Record record1, int index1, int weight1, Record record2, int index2, int weight2,
+                      RecordMerger merger) {
+        append(timestamp, merger.merge(getLong(record1, index1), weight1, getLong(record2, index2), weight2));
+    }
+
+    @Override
+    void appendCopy(long timestamp, Record source, int index) {
+        append(timestamp, getLong(source, index));
+    }
+
+    private static long getLong(Record record, int index) {
+        return record instanceof LongRecord ? ((LongRecord) record).getLong(index) : (Long) record.getValue(index);
+    }
+}
@@ -0,0 +1,54 @@
+package com.melzner.mapreduce.simulation;
+
+/** Read only history of one record key. */
+public abstract class Record {
+
+    private final Object key;
+    int size;
+
+    Record(Object key) {
+        this.key = key;
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public abstract long getTimestamp(int index);
+
+    public abstract double getDouble(int index);
+
+    public abstract Object getValue(int index);
+
+    Record merge(int weight, Record other, int otherWeight, RecordMerger merger) {
+        byte type = RecordFile.typeOf(this);
+        if (RecordFile.typeOf(other) != type) {
+            throw new IllegalArgumentException("cannot merge " + getClass().getSimpleName() + " with "
+                    + other.getClass().getSimpleName() + " for record " + key);
+        }
+        if (size == 0) return other;
+        else if (other.size == 0) return this;
+
+        WritableRecord result = WritableRecord.create(key, type);
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            long t1 = getTimestamp(i);
+            long t2 = other.getTimestamp(j);
+            result.appendMerged(Math.min(t1, t2), this, i, weight, other, j, otherWeight, merger);
+            if (t1 <= t2) i++;
+            if (t2 <= t1) j++;
+        }
+        for (; i < size; i++) result.appendCopy(getTimestamp(i), this, i);
+        for (; j < other.size; j++) result.appendCopy(other.getTimestamp(j), other, j);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + key + ", " + size + " entries}";
+    }
+}
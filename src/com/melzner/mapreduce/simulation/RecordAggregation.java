@@ -0,0 +1,17 @@
+package com.melzner.mapreduce.simulation;
+
+import java.util.Locale;
+
+/** Down-sampling of a record history into buckets of fixed width, applied while the simulation runs. */
+public enum RecordAggregation {
+    NONE,
+    LAST,
+    MIN,
+    MAX,
+    /** time-weighted mean of the bucket, rounded for int and long records */
+    MEAN;
+
+    public static RecordAggregation parse(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,232 @@
+package com.melzner.mapreduce.simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Memory mapped reader of the record history written by {@link RecordFileSink}. The file is a sequence of
+ * segments followed by a key table:
+ * <pre>
+ * segment:   int keyId, byte type, int count, long[count] timestamps, int|long|double[count] values
+ * key table: int keyCount, {byte type, int length, byte[length] utf-8 key} per key id
+ * footer:    long offset of the key table
+ * </pre>
+ * Enum keys are restored as their constants if the enum class can be loaded, any other key as its string.
+ */
+public class RecordFile {
+
+    static final byte INT = 0;
+    static final byte LONG = 1;
+    static final byte DOUBLE = 2;
+
+    private static final int SEGMENT_HEADER_SIZE = 9;
+    private static final long WINDOW_SIZE = 1L << 30;
+    /** windows overlap by one segment, so every segment lies completely in the window of its offset */
+    private static final long MAX_SEGMENT_SIZE = segmentSize(LONG, WritableRecord.CHUNK_SIZE);
+
+    private final MappedByteBuffer[] windows;
+    private final Map<Object, Record> records = new HashMap<>();
+
+    private RecordFile(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        windows = new MappedByteBuffer[(int) ((fileSize + WINDOW_SIZE - 1) / WINDOW_SIZE)];
+        for (int w = 0; w < windows.length; w++) {
+            long start = w * WINDOW_SIZE;
+            windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(fileSize - start, WINDOW_SIZE + MAX_SEGMENT_SIZE));
+        }
+
+        long keyTableOffset = readBuffer(channel, fileSize - 8, 8).getLong();
+        ByteBuffer keyTable = readBuffer(channel, keyTableOffset, (int) (fileSize - 8 - keyTableOffset));
+        FileRecord[] keyRecords = new FileRecord[keyTable.getInt()];
+        for (int i = 0; i < keyRecords.length; i++) {
+            byte type = keyTable.get();
+            byte[] key = new byte[keyTable.getInt()];
+            keyTable.get(key);
+            keyRecords[i] = new FileRecord(decodeKey(new String(key, StandardCharsets.UTF_8)), type);
+        }
+
+        long offset = 0;
+        while (offset < keyTableOffset) {
+            ByteBuffer window = windows[(int) (offset / WINDOW_SIZE)];
+            int position = (int) (offset % WINDOW_SIZE);
+            int keyId = window.getInt(position);
+            byte type = window.get(position + 4);
+            int count = window.getInt(position + 5);
+            keyRecords[keyId].addSegment(offset, count);
+            offset += segmentSize(type, count);
+        }
+        for (FileRecord record : keyRecords) {
+            records.put(record.getKey(), record);
+        }
+    }
+
+    public static RecordFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new RecordFile(channel);
+        }
+    }
+
+    public Record getRecord(Object key) {
+        return records.get(key);
+    }
+
+    public Map<Object, Record> getRecords() {
+        return Collections.unmodifiableMap(records);
+    }
+
+    private static ByteBuffer readBuffer(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of record file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    static byte typeOf(Record record) {
+        if (record instanceof IntRecord) {
+            return INT;
+        } else if (record instanceof LongRecord) {
+            return LONG;
+        } else if (record instanceof DoubleRecord) {
+            return DOUBLE;
+        } else if (record instanceof FileRecord) {
+            return ((FileRecord) record).type;
+        }
+        throw new IllegalArgumentException("unknown record " + record);
+    }
+
+    private static int valueSize(byte type) {
+        return type == INT ? 4 : 8;
+    }
+
+    static int segmentSize(byte type, int count) {
+        return SEGMENT_HEADER_SIZE + count * (8 + valueSize(type));
+    }
+
+    static String encodeKey(Object key) {
+        if (key instanceof Enum) {
+            return "E" + ((Enum<?>) key).getDeclaringClass().getName() + "#" + ((Enum<?>) key).name();
+        }
+        return "S" + key;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Object decodeKey(String key) {
+        if (key.startsWith("E")) {
+            int separator = key.indexOf('#');
+            try {
+                Class<?> enumClass = Class.forName(key.substring(1, separator));
+                return Enum.valueOf((Class<? extends Enum>) enumClass, key.substring(separator + 1));
+            } catch (ClassNotFoundException | IllegalArgumentException e) {
+                return key.substring(separator + 1);
+            }
+        }
+        return key.substring(1);
+    }
+
+    private class FileRecord extends Record {
+
+        private final byte type;
+        private long[] segmentOffsets = new long[4];
+        /** index of the first entry of every segment, ascending */
+        private int[] segmentStarts = new int[4];
+        private int segmentCount;
+        private int lastSegment;
+
+        private FileRecord(Object key, byte type) {
+            super(key);
+            this.type = type;
+        }
+
+        private void addSegment(long offset, int count) {
+            if (segmentCount == segmentOffsets.length) {
+                segmentOffsets = Arrays.copyOf(segmentOffsets, segmentCount * 2);
+                segmentStarts = Arrays.copyOf(segmentStarts, segmentCount * 2);
+            }
+            segmentOffsets[segmentCount] = offset;
+            segmentStarts[segmentCount] = size;
+            segmentCount++;
+            size += count;
+        }
+
+        /** histories are mostly read in order, so the segment of the previous access is tried first */
+        private int segment(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("index " + index + " of " + size + " entries");
+            }
+            int segment = lastSegment;
+            if (index < segmentStarts[segment] || (segment + 1 < segmentCount && index >= segmentStarts[segment + 1])) {
+                segment = Arrays.binarySearch(segmentStarts, 0, segmentCount, index);
+                if (segment < 0) {
+                    segment = - segment - 2;
+                }
+                lastSegment = segment;
+            }
+            return segment;
+        }
+
+        private int segmentSize(int segment) {
+            return (segment + 1 < segmentCount ? segmentStarts[segment + 1] : size) - segmentStarts[segment];
+        }
+
+        private ByteBuffer window(int segment) {
+            return windows[(int) (segmentOffsets[segment] / WINDOW_SIZE)];
+        }
+
+        private int timestampPosition(int segment, int index) {
+            return (int) (segmentOffsets[segment] % WINDOW_SIZE) + SEGMENT_HEADER_SIZE
+                    + (index - segmentStarts[segment]) * 8;
+        }
+
+        private int valuePosition(int segment, int index) {
+            return (int) (segmentOffsets[segment] % WINDOW_SIZE) + SEGMENT_HEADER_SIZE + segmentSize(segment) * 8
+                    + (index - segmentStarts[segment]) * valueSize(type);
+        }
+
+        @Override
+        public long getTimestamp(int index) {
+            int segment = segment(index);
+            return window(segment).getLong(timestampPosition(segment, index));
+        }
+
+        @Override
+        public double getDouble(int index) {
+            int segment = segment(index);
+            ByteBuffer window = window(segment);
+            int position = valuePosition(segment, index);
+            switch (type) {
+                case INT:
+                    return window.getInt(position);
+                case LONG:
+                    return window.getLong(position);
+                default:
+                    return window.getDouble(position);
+            }
+        }
+
+        @Override
+        public Object getValue(int index) {
+            int segment = segment(index);
+            ByteBuffer window = window(segment);
+            int position = valuePosition(segment, index);
+            switch (type) {
+                case INT:
+                    return window.getInt(position);
+                case LONG:
+                    return window.getLong(position);
+                default:
+                    return window.getDouble(position);
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.melzner.mapreduce.simulation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Supplier;
+
+/** Streams record history into a binary file in the layout of {@link RecordFile}. */
+public class RecordFileSink implements RecordSink {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+    private final Map<Object, Integer> keyIds = new HashMap<>();
+    private final List<WritableRecord> keyRecords = new ArrayList<>();
+
+    public RecordFileSink(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    /** every run overwrites {@code path} */
+    public static Supplier<RecordFileSink> factory(Path path) {
+        return () -> {
+            try {
+                return new RecordFileSink(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    @Override
+    public void write(WritableRecord record, int count) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        Integer keyId = keyIds.get(record.getKey());
+        if (keyId == null) {
+            keyId = keyRecords.size();
+            keyIds.put(record.getKey(), keyId);
+            keyRecords.add(record);
+        }
+        byte type = RecordFile.typeOf(record);
+        ensureRemaining(RecordFile.segmentSize(type, count));
+
+        buffer.putInt(keyId).put(type).putInt(count);
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(record.getTimestamp(i));
+        }
+        switch (type) {
+            case RecordFile.INT:
+                for (int i = 0; i < count; i++) buffer.putInt(((IntRecord) record).getInt(i));
+                break;
+            case RecordFile.LONG:
+                for (int i = 0; i < count; i++) buffer.putLong(((LongRecord) record).getLong(i));
+                break;
+            case RecordFile.DOUBLE:
+                for (int i = 0; i < count; i++) buffer.putDouble(((DoubleRecord) record).getDouble(i));
+                break;
+        }
+    }
+
+    @Override
+    public Map<Object, Record> finish(Collection<WritableRecord> records) throws IOException {
+        for (WritableRecord record : records) {
+            write(record, record.size());
+        }
+        flush();
+        long keyTableOffset = channel.position();
+
+        ensureRemaining(4);
+        buffer.putInt(keyRecords.size());
+        for (WritableRecord record : keyRecords) {
+            byte[] key = RecordFile.encodeKey(record.getKey()).getBytes(StandardCharsets.UTF_8);
+            ensureRemaining(5 + key.length);
+            buffer.put(RecordFile.typeOf(record)).putInt(key.length).put(key);
+        }
+        ensureRemaining(8);
+        buffer.putLong(keyTableOffset);
+        flush();
+        channel.close();
+
+        return RecordFile.open(path).getRecords();
+    }
+
+    private void ensureRemaining(int size) throws IOException {
+        if (buffer.remaining() < size) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
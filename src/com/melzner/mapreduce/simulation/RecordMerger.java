@@ -0,0 +1,82 @@
+package com.melzner.mapreduce.simulation;
+
+import java.util.function.BiFunction;
+
+public interface RecordMerger {
+
+    /** weighted by the number of replications each value stands for */
+    RecordMerger MEAN = new RecordMerger() {
+        @Override
+        public int merge(int value1, int value2) {
+            return merge(value1, 1, value2, 1);
+        }
+
+        @Override
+        public long merge(long value1, long value2) {
+            return merge(value1, 1, value2, 1);
+        }
+
+        @Override
+        public double merge(double value1, double value2) {
+            return merge(value1, 1, value2, 1);
+        }
+
+        @Override
+        public int merge(int value1, int weight1, int value2, int weight2) {
+            return (int) merge((long) value1, weight1, (long) value2, weight2);
+        }
+
+        @Override
+        public long merge(long value1, int weight1, long value2, int weight2) {
+            // divides before multiplying so large values don't overflow, the remainders are added separately
+            long weights = (long) weight1 + weight2;
+            return value1 / weights * weight1 + value2 / weights * weight2
+                    + (value1 % weights * weight1 + value2 % weights * weight2) / weights;
+        }
+
+        @Override
+        public double merge(double value1, int weight1, double value2, int weight2) {
+            return (value1 * weight1 + value2 * weight2) / ((double) weight1 + weight2);
+        }
+    };
+
+    int merge(int value1, int value2);
+
+    long merge(long value1, long value2);
+
+    double merge(double value1, double value2);
+
+    /** the default ignores the weights, mergers that aren't means only implement the unweighted methods */
+    default int merge(int value1, int weight1, int value2, int weight2) {
+        return merge(value1, value2);
+    }
+
+    default long merge(long value1, int weight1, long value2, int weight2) {
+        return merge(value1, value2);
+    }
+
+    default double merge(double value1, int weight1, double value2, int weight2) {
+        return merge(value1, value2);
+    }
+
+    /** the transformation doesn't see the weights, use {@link #MEAN} for averages */
+    @SuppressWarnings("unchecked")
+    static <T> RecordMerger boxing(BiFunction<T, T, T> transformation) {
+        return new RecordMerger() {
+            @Override
+            public int merge(int value1, int value2) {
+                return (Integer) transformation.apply((T) (Integer) value1, (T) (Integer) value2);
+            }
+
+            @Override
+            public long merge(long value1, long value2) {
+                return (Long) transformation.apply((T) (Long) value1, (T) (Long) value2);
+            }
+
+            @Override
+            public double merge(double value1, double value2) {
+                return (Double) transformation.apply((T) (Double) value1, (T) (Double) value2);
+            }
+        };
+    }
+}
@@ -0,0 +1,15 @@
+package com.melzner.mapreduce.simulation;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/** Receives record history while a simulation is running, a session with a sink keeps one chunk per record. */
+public interface RecordSink {
+
+    void write(WritableRecord record, int count) throws IOException;
+
+    /** @return the complete records to expose in the {@link SimulationResult} */
+    Map<Object, Record> finish(Collection<WritableRecord> records) throws IOException;
+
+}
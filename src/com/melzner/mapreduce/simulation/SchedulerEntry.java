@@ -0,0 +1,27 @@
+package com.melzner.mapreduce.simulation;
+
+abstract class SchedulerEntry {
+
+    long timestamp;
+    /** execution order of the scheduling simulatable, cached to keep comparisons free of virtual calls */
+    double order;
+    /** insertion count of the session, breaks remaining ties in FIFO order */
+    long sequence;
+    /** position in the array of a {@link HeapScheduler}, - 1 if the entry isn't in a heap */
+    int index = - 1;
+    /** intrusive link used by {@link CalendarQueueScheduler} and by the session's free lists of recycled entries */
+    SchedulerEntry next;
+
+    abstract boolean execute();
+
+    static int compare(SchedulerEntry e1, SchedulerEntry e2) {
+        if (e1.timestamp != e2.timestamp) {
+            return e1.timestamp < e2.timestamp ? - 1 : 1;
+        }
+        int c = Double.compare(e1.order, e2.order);
+        if (c != 0) {
+            return c;
+        }
+        return Long.compare(e1.sequence, e2.sequence);
+    }
+}
@@ -2,6 +2,8 @@ package com.melzner.mapreduce.simulation;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public abstract class Simulatable<EVENT_TYPE extends SimulationEventType> {
@@ -9,6 +11,7 @@ public abstract class Simulatable<EVENT_TYPE extends SimulationEventType> {
     private final ExecutionOrder executionOrder;
     private final List<Runnable> simulationStartListeners = new ArrayList<>();
     private Simulation.SimulationSession simulationSession;
+    private SplittableRandom random;
     private boolean isBase;
 
     protected Simulatable() {
@@ -27,6 +30,16 @@ public abstract class Simulatable<EVENT_TYPE extends SimulationEventType> {
         simulationSession.invokeAction(delay, runnable);
     }
 
+    /** passes {@code argument} to a non-capturing action instead of allocating a lambda per call */
+    public <T> void invokeAction(long delay, Consumer<T> action, T argument) {
+        simulationSession.invokeAction(delay, action, argument);
+    }
+
+    /** handles aren't recycled, prefer the plain variant for actions that are never cancelled */
+    public Cancellable invokeCancellableAction(long delay, Runnable runnable) {
+        return simulationSession.invokeCancellableAction(delay, runnable);
+    }
+
     public Integer getEventTypeCount(SimulationEventType eventType) {
         return simulationSession.getEventCount(eventType);
     }
@@ -35,12 +48,21 @@ public abstract class Simulatable<EVENT_TYPE extends SimulationEventType> {
         simulationSession.invokeEvent(this, delay, event);
     }
 
+    /** frequently updated records should use the primitive handles, e.g. {@link #getIntRecord(Object)} */
     public <T> void updateRecordValue(Object key, Function<T, T> transformation, T def) {
         simulationSession.updateRecordValue(key, transformation, def);
     }
 
-    private Object getRecordValue(Object key) {
-        return simulationSession.getRecordValue(key);
+    protected IntRecord getIntRecord(Object key) {
+        return simulationSession.getIntRecord(key);
+    }
+
+    protected LongRecord getLongRecord(Object key) {
+        return simulationSession.getLongRecord(key);
+    }
+
+    protected DoubleRecord getDoubleRecord(Object key) {
+        return simulationSession.getDoubleRecord(key);
     }
 
     protected void addSimulationStartListener(Runnable listener) {
@@ -59,8 +81,17 @@ public abstract class Simulatable<EVENT_TYPE extends SimulationEventType> {
         return simulationSession.getTimestamp();
     }
 
+    Simulation.SimulationSession getSimulationSession() {
+        return simulationSession;
+    }
+
     public void setSimulationSession(Simulation.SimulationSession simulationSession) {
         this.simulationSession = simulationSession;
+        random = simulationSession.newRandom();
+    }
+
+    protected SplittableRandom getRandom() {
+        return random;
     }
 
     protected Simulatable<EVENT_TYPE> newInitialInstance() {
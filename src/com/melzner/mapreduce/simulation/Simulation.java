@@ -2,13 +2,22 @@ package com.melzner.mapreduce.simulation;
 
 import com.melzner.mapreduce.visualizer.GraphVisualizer;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class Simulation {
 
     private final List<Simulatable<?>> simulatables = new ArrayList<>();
+    private EventSchedulerType eventSchedulerType = EventSchedulerType.CALENDAR_QUEUE;
+    private SplittableRandom random = new SplittableRandom();
+    private Supplier<? extends RecordSink> recordSinkFactory;
+    private final RecordBucketing defaultBucketing = new RecordBucketing(RecordAggregation.NONE, 0);
+    private final Map<Object, RecordBucketing> keyBucketing = new HashMap<>();
     private int addingCount = 0;
 
     public synchronized void add(Simulatable<?> simulatable) {
@@ -36,10 +45,38 @@ public class Simulation {
         } finally {
             simulatables = originalSimulatables;
         }*/
-        return new SimulationSession(simulatables).run();
+        RecordSink recordSink = recordSinkFactory == null ? null : recordSinkFactory.get();
+        return new SimulationSession(simulatables, eventSchedulerType.newScheduler(), random.split(), recordSink,
+                defaultBucketing, new HashMap<>(keyBucketing)).run();
 
     }
 
+    public synchronized Simulation setSeed(long seed) {
+        random = new SplittableRandom(seed);
+        return this;
+    }
+
+    public synchronized Simulation setEventSchedulerType(EventSchedulerType eventSchedulerType) {
+        this.eventSchedulerType = eventSchedulerType;
+        return this;
+    }
+
+    /** null keeps the record histories in memory */
+    public synchronized Simulation setRecordSink(Supplier<? extends RecordSink> recordSinkFactory) {
+        this.recordSinkFactory = recordSinkFactory;
+        return this;
+    }
+
+    public synchronized Simulation setRecordAggregation(RecordAggregation aggregation, long bucketWidth) {
+        defaultBucketing.set(aggregation, bucketWidth);
+        return this;
+    }
+
+    public synchronized Simulation setRecordAggregation(Object key, RecordAggregation aggregation, long bucketWidth) {
+        keyBucketing.put(key, new RecordBucketing(aggregation, bucketWidth));
+        return this;
+    }
+
     public static GraphVisualizer newVisualizer(String title) {
         return new GraphVisualizer()
                 .setTitle(title)
@@ -49,16 +86,33 @@ public class Simulation {
 
     static class SimulationSession {
         private final List<Simulatable<?>> simulatables;
-        private final Map<SimulationEventType, Integer> eventTypeCount = new HashMap<>();
-        private final PriorityQueue<SchedulerEntry> eventQueue =
-                new PriorityQueue<>(Comparator.<SchedulerEntry>comparingLong(o -> o.timestamp)
-                        .thenComparingDouble(SchedulerEntry::getOrder));
-        private final Map<Object, Object> recordData = new HashMap<>();
-        private final Map<Object, List<RecordHistoryEntry>> recordHistory = new HashMap<>();
+        /** pending event count per type, boxed in a mutable array to keep counting allocation free */
+        private final Map<SimulationEventType, int[]> eventTypeCount = new HashMap<>();
+        private final EventScheduler eventQueue;
+        private final SplittableRandom random;
+        private final Map<Object, WritableRecord> records = new HashMap<>();
+        private final RecordSink recordSink;
+        private final RecordBucketing defaultBucketing;
+        private final Map<Object, RecordBucketing> keyBucketing;
+        /** executed entries and entries cancelled before they were due, removed or skipped when polled */
+        private long executedEntries, cancelledEntries;
         private long currentTimestamp;
+        private long nextSequence;
         private SimulationState currentState;
-
-        private SimulationSession(List<Simulatable<?>> simulatables) {
+        /** reusable buffer for the entries sharing one timestamp */
+        private SchedulerEntry[] batch = new SchedulerEntry[16];
+        /** recycled scheduler entries, linked via {@link SchedulerEntry#next} */
+        private ActionEntry freeActionEntries;
+        private EventEntry<?> freeEventEntries;
+
+        private SimulationSession(List<Simulatable<?>> simulatables, EventScheduler eventQueue, SplittableRandom random,
+                                  RecordSink recordSink, RecordBucketing defaultBucketing,
+                                  Map<Object, RecordBucketing> keyBucketing) {
+            this.eventQueue = eventQueue;
+            this.random = random;
+            this.recordSink = recordSink;
+            this.defaultBucketing = new RecordBucketing(defaultBucketing.aggregation, defaultBucketing.bucketWidth);
+            this.keyBucketing = keyBucketing;
             this.simulatables = new ArrayList<>(simulatables);
             this.simulatables.sort(Comparator.comparingDouble(s -> s.getExecutionOrder().getOrder()));
             for (Simulatable<?> simulatable : this.simulatables) {
@@ -66,6 +120,10 @@ public class Simulation {
             }
         }
 
+        SplittableRandom newRandom() {
+            return random.split();
+        }
+
         long getTimestamp() {
             return currentTimestamp;
         }
@@ -75,36 +133,89 @@ public class Simulation {
             currentTimestamp = 0;
             currentState = new SimulationState(0);
             startSimulation();
-            while (eventQueue.size() > 0) {
+            while (! eventQueue.isEmpty()) {
                 SchedulerEntry eventEntry = eventQueue.poll();
-                List<SchedulerEntry> entries = new ArrayList<>();
-                entries.add(eventEntry);
-                while (eventQueue.size() > 0 && eventQueue.peek().timestamp == eventEntry.timestamp) {
-                    entries.add(eventQueue.poll());
+                int batchSize = 0;
+                batch[batchSize++] = eventEntry;
+                while (! eventQueue.isEmpty() && eventQueue.peek().timestamp == eventEntry.timestamp) {
+                    if (batchSize == batch.length) {
+                        batch = Arrays.copyOf(batch, batchSize * 2);
+                    }
+                    batch[batchSize++] = eventQueue.poll();
                 }
 
                 long lastTimestamp = currentTimestamp;
                 currentTimestamp = eventEntry.timestamp;
 
                 boolean executed = false;
-                for (SchedulerEntry entry : entries) {
+                for (int i = 0; i < batchSize; i++) {
+                    SchedulerEntry entry = batch[i];
+                    batch[i] = null;
                     if (entry instanceof EventEntry) {
-                        eventTypeCount.merge(((EventEntry<?>) entry).event.getType(), - 1, Integer::sum);
+                        eventTypeCount.get(((EventEntry<?>) entry).event.getType())[0]--;
                     }
-                    executed = entry.execute() || executed;
+                    if (entry.execute()) {
+                        executed = true;
+                        executedEntries++;
+                    } else {
+                        cancelledEntries++;
+                    }
+                    recycle(entry);
                 }
                 if (! executed) {
                     currentTimestamp = lastTimestamp;
                 }
             }
-            System.out.println("finished simulation in " + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - tNow) / 1000.0 + " ms");
+            System.out.println("finished simulation in " + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - tNow) / 1000.0
+                    + " ms, " + executedEntries + " entries executed, " + cancelledEntries + " cancelled");
 
-            return new SimulationResult(currentTimestamp, recordHistory);
+            return new SimulationResult(currentTimestamp, finishRecords(), executedEntries, cancelledEntries);
+        }
+
+        static void onDestroy(SimulationEvent<?> event) {
+            if (event.entry != null) {
+                ((EventEntry<?>) event.entry).simulatable.getSimulationSession().withdraw(event.entry);
+            }
+        }
+
+        /** entries of the current batch were already polled, they're skipped when they're executed */
+        private void withdraw(SchedulerEntry entry) {
+            if (eventQueue.remove(entry)) {
+                if (entry instanceof EventEntry) {
+                    eventTypeCount.get(((EventEntry<?>) entry).event.getType())[0]--;
+                }
+                cancelledEntries++;
+                recycle(entry);
+            }
+        }
+
+        private Map<Object, Record> finishRecords() {
+            if (recordSink == null) {
+                return Collections.unmodifiableMap(records);
+            }
+            try {
+                return recordSink.finish(records.values());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** @return false if there is no sink and the record has to keep growing in memory */
+        boolean flushRecord(WritableRecord record) {
+            if (recordSink == null) {
+                return false;
+            }
+            try {
+                recordSink.write(record, record.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
         }
 
         public Integer getEventCount(SimulationEventType eventType) {
-            Integer count = eventTypeCount.get(eventType);
-            return count == null ? 0 : count;
+            int[] count = eventTypeCount.get(eventType);
+            return count == null ? 0 : count[0];
         }
 
         private void startSimulation() {
@@ -119,84 +230,197 @@ public class Simulation {
         }
 
         void invokeAction(long delay, Runnable action) {
+            ActionEntry entry = obtainActionEntry(delay);
+            entry.action = action;
+            schedule(entry);
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> void invokeAction(long delay, Consumer<T> action, T argument) {
+            ActionEntry entry = obtainActionEntry(delay);
+            entry.consumer = (Consumer<Object>) action;
+            entry.argument = argument;
+            schedule(entry);
+        }
+
+        Cancellable invokeCancellableAction(long delay, Runnable action) {
             if (delay < 0) {
                 throw new IllegalArgumentException("delay can't be negative");
             }
-            eventQueue.add(new ActionEntry(currentTimestamp + delay, action));
+            CancellableActionEntry handle = new CancellableActionEntry(this);
+            ActionEntry entry = handle;
+            entry.timestamp = currentTimestamp + delay;
+            entry.action = action;
+            schedule(entry);
+            return handle;
         }
 
-        <E extends SimulationEventType> void invokeEvent(Simulatable<E> simulatable, long delay, SimulationEvent<E> event) {
+        private void schedule(SchedulerEntry entry) {
+            entry.sequence = nextSequence++;
+            eventQueue.add(entry);
+        }
+
+        private ActionEntry obtainActionEntry(long delay) {
             if (delay < 0) {
                 throw new IllegalArgumentException("delay can't be negative");
             }
-            eventTypeCount.merge(event.getType(), 1, Integer::sum);
-            eventQueue.add(new EventEntry<>(currentTimestamp + delay, simulatable, event));
+            ActionEntry entry = freeActionEntries;
+            if (entry == null) {
+                entry = new ActionEntry();
+            } else {
+                freeActionEntries = (ActionEntry) entry.next;
+                entry.next = null;
+            }
+            entry.timestamp = currentTimestamp + delay;
+            return entry;
         }
 
         @SuppressWarnings("unchecked")
-        public <T> void updateRecordValue(Object key, Function<T, T> transformation, T def) {
-            recordData.compute(key, (k, v) -> {
-                T newValue = transformation.apply(v == null ? def : (T) v);
-                if (! Objects.equals(newValue, v)) {
-                    List<RecordHistoryEntry> history = recordHistory.computeIfAbsent(key, k1 -> new ArrayList<>());
-                    RecordHistoryEntry lastEntry = history.isEmpty() ? null : history.get(history.size() - 1);
-                    if (lastEntry == null || lastEntry.timestamp != currentTimestamp) {
-                        history.add(new RecordHistoryEntry(currentTimestamp, newValue));
-                    } else {
-                        lastEntry.value = newValue;
-                    }
+        <E extends SimulationEventType> void invokeEvent(Simulatable<E> simulatable, long delay, SimulationEvent<E> event) {
+            if (delay < 0) {
+                throw new IllegalArgumentException("delay can't be negative");
+            }
+            eventTypeCount.computeIfAbsent(event.getType(), t -> new int[1])[0]++;
+            EventEntry<E> entry = (EventEntry<E>) freeEventEntries;
+            if (entry == null) {
+                entry = new EventEntry<>();
+            } else {
+                freeEventEntries = (EventEntry<?>) entry.next;
+                entry.next = null;
+            }
+            entry.timestamp = currentTimestamp + delay;
+            entry.order = simulatable.getExecutionOrder().getOrder();
+            entry.simulatable = simulatable;
+            entry.event = event;
+            event.entry = entry;
+            schedule(entry);
+        }
+
+        private void recycle(SchedulerEntry entry) {
+            if (entry instanceof EventEntry) {
+                EventEntry<?> eventEntry = (EventEntry<?>) entry;
+                if (eventEntry.event.entry == eventEntry) {
+                    eventEntry.event.entry = null;
                 }
-                return newValue;
-            });
+                eventEntry.event.release();
+                eventEntry.simulatable = null;
+                eventEntry.event = null;
+                eventEntry.next = freeEventEntries;
+                freeEventEntries = eventEntry;
+            } else if (entry instanceof CancellableActionEntry) {
+                // the caller may still hold the handle, so it's never reused
+                ((ActionEntry) entry).action = null;
+            } else {
+                ActionEntry actionEntry = (ActionEntry) entry;
+                actionEntry.action = null;
+                actionEntry.consumer = null;
+                actionEntry.argument = null;
+                actionEntry.next = freeActionEntries;
+                freeActionEntries = actionEntry;
+            }
         }
 
-        public Object getRecordValue(Object key) {
-            return recordData.get(key);
+        public <T> void updateRecordValue(Object key, Function<T, T> transformation, T def) {
+            WritableRecord record = records.get(key);
+            if (record == null) {
+                record = configure(WritableRecord.create(this, key, def));
+                records.put(key, record);
+            }
+            record.update(transformation, def);
         }
-    }
 
-    private static abstract class SchedulerEntry {
+        private WritableRecord configure(WritableRecord record) {
+            RecordBucketing bucketing = keyBucketing.getOrDefault(record.getKey(), defaultBucketing);
+            record.setAggregation(bucketing.aggregation, bucketing.bucketWidth);
+            return record;
+        }
 
-        final long timestamp;
+        IntRecord getIntRecord(Object key) {
+            return (IntRecord) records.computeIfAbsent(key, k -> configure(new IntRecord(this, k)));
+        }
+
+        LongRecord getLongRecord(Object key) {
+            return (LongRecord) records.computeIfAbsent(key, k -> configure(new LongRecord(this, k)));
+        }
 
-        SchedulerEntry(long timestamp) {
-            this.timestamp = timestamp;
+        DoubleRecord getDoubleRecord(Object key) {
+            return (DoubleRecord) records.computeIfAbsent(key, k -> configure(new DoubleRecord(this, k)));
         }
+    }
+
+    private static class RecordBucketing {
 
-        abstract boolean execute();
+        private RecordAggregation aggregation;
+        private long bucketWidth;
 
-        double getOrder() {
-            return 0;
+        private RecordBucketing(RecordAggregation aggregation, long bucketWidth) {
+            set(aggregation, bucketWidth);
+        }
+
+        private void set(RecordAggregation aggregation, long bucketWidth) {
+            if (aggregation != RecordAggregation.NONE && bucketWidth <= 0) {
+                throw new IllegalArgumentException("bucket width must be positive");
+            }
+            this.aggregation = aggregation;
+            this.bucketWidth = bucketWidth;
         }
     }
 
     private static class ActionEntry extends SchedulerEntry {
 
-        private final Runnable action;
+        private Runnable action;
+        private Consumer<Object> consumer;
+        private Object argument;
 
-        ActionEntry(long timestamp, Runnable action) {
-            super(timestamp);
-            this.action = action;
+        @Override
+        boolean execute() {
+            if (action != null) {
+                action.run();
+            } else {
+                consumer.accept(argument);
+            }
+            return true;
+        }
+    }
+
+    private static class CancellableActionEntry extends ActionEntry implements Cancellable {
+
+        private final SimulationSession session;
+        private boolean done, withdrawn;
+
+        private CancellableActionEntry(SimulationSession session) {
+            this.session = session;
         }
 
         @Override
         boolean execute() {
-            action.run();
+            if (withdrawn) {
+                return false;
+            }
+            done = true;
+            return super.execute();
+        }
+
+        @Override
+        public boolean cancel() {
+            if (done || withdrawn) {
+                return false;
+            }
+            withdrawn = true;
+            session.withdraw(this);
             return true;
         }
 
+        @Override
+        public boolean isPending() {
+            return ! done && ! withdrawn;
+        }
     }
 
     private static class EventEntry<EVENT_TYPE extends SimulationEventType> extends SchedulerEntry {
 
-        private final Simulatable<EVENT_TYPE> simulatable;
-        private final SimulationEvent<EVENT_TYPE> event;
-
-        private EventEntry(long timestamp, Simulatable<EVENT_TYPE> simulatable, SimulationEvent<EVENT_TYPE> event) {
-            super(timestamp);
-            this.simulatable = simulatable;
-            this.event = event;
-        }
+        private Simulatable<EVENT_TYPE> simulatable;
+        private SimulationEvent<EVENT_TYPE> event;
 
         @Override
         public String toString() {
@@ -211,11 +435,6 @@ public class Simulation {
             }
             return false;
         }
-
-        @Override
-        double getOrder() {
-            return simulatable.getExecutionOrder().getOrder();
-        }
     }
 
 }
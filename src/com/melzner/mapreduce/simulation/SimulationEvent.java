@@ -4,6 +4,10 @@ public class SimulationEvent<T extends SimulationEventType> {
 
     private final T type;
     private boolean destroyed;
+    /** pending scheduler entry of the event, destroying the event removes it */
+    SchedulerEntry entry;
+    SimulationEventPool<?> pool;
+    SimulationEvent<?> nextFree;
 
     public SimulationEvent(T type) {
         this.type = type;
@@ -18,11 +22,27 @@ public class SimulationEvent<T extends SimulationEventType> {
         return "SimulationEvent{" + getType() + "}";
     }
 
+    /**
+     * Cancels the event, its pending entry is removed from the scheduler.
+     */
     public void destroy() {
-        destroyed = true;
+        if (! destroyed) {
+            destroyed = true;
+            Simulation.SimulationSession.onDestroy(this);
+        }
     }
 
     public boolean isDestroyed() {
         return destroyed;
     }
+
+    void reset() {
+        destroyed = false;
+    }
+
+    void release() {
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
 }
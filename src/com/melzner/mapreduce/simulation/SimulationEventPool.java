@@ -0,0 +1,34 @@
+package com.melzner.mapreduce.simulation;
+
+import java.util.function.Supplier;
+
+/** Recycles simulation events of one kind, a released event must not be referenced anymore. Not thread safe. */
+public class SimulationEventPool<E extends SimulationEvent<?>> {
+
+    private final Supplier<E> constructor;
+    private E free;
+
+    public SimulationEventPool(Supplier<E> constructor) {
+        this.constructor = constructor;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E obtain() {
+        E event = free;
+        if (event == null) {
+            event = constructor.get();
+            event.pool = this;
+        } else {
+            free = (E) event.nextFree;
+            event.nextFree = null;
+            event.reset();
+        }
+        return event;
+    }
+
+    @SuppressWarnings("unchecked")
+    void release(SimulationEvent<?> event) {
+        event.nextFree = free;
+        free = (E) event;
+    }
+}
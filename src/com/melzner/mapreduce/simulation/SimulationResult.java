@@ -1,96 +1,159 @@
 package com.melzner.mapreduce.simulation;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
 public class SimulationResult {
 
     private final long duration;
-    private final Map<Object, List<RecordHistoryEntry>> recordHistory;
+    private final long executedEntries, cancelledEntries;
+    private final int replicas;
+    private final Map<Object, Record> records = new HashMap<>();
+    private Map<Object, List<RecordHistoryEntry>> recordHistory;
 
-    SimulationResult(long duration, Map<Object, List<RecordHistoryEntry>> recordHistory) {
+    SimulationResult(long duration, Map<Object, Record> records, long executedEntries, long cancelledEntries) {
+        this(duration, records, executedEntries, cancelledEntries, 1);
+    }
+
+    private SimulationResult(long duration, Map<Object, Record> records, long executedEntries, long cancelledEntries,
+                             int replicas) {
         this.duration = duration;
-        this.recordHistory = recordHistory;
+        this.executedEntries = executedEntries;
+        this.cancelledEntries = cancelledEntries;
+        this.replicas = replicas;
+        for (Record record : records.values()) {
+            if (record.size() > 0) {
+                this.records.put(record.getKey(), record);
+            }
+        }
     }
 
     public long getDuration() {
         return duration;
     }
 
-    public Map<Object, List<RecordHistoryEntry>> getRecordHistory() {
+    public long getExecutedEntryCount() {
+        return executedEntries;
+    }
+
+    public long getCancelledEntryCount() {
+        return cancelledEntries;
+    }
+
+    public int getReplicaCount() {
+        return replicas;
+    }
+
+    public Record getRecord(Object key) {
+        return records.get(key);
+    }
+
+    public Map<Object, Record> getRecords() {
+        return Collections.unmodifiableMap(records);
+    }
+
+    /** every entry is materialized, prefer {@link #getRecord(Object)} for large histories */
+    public synchronized Map<Object, List<RecordHistoryEntry>> getRecordHistory() {
+        if (recordHistory == null) {
+            recordHistory = new HashMap<>();
+            for (Record record : records.values()) {
+                List<RecordHistoryEntry> entries = new ArrayList<>(record.size());
+                for (int i = 0; i < record.size(); i++) {
+                    entries.add(new RecordHistoryEntry(record.getTimestamp(i), record.getValue(i)));
+                }
+                recordHistory.put(record.getKey(), entries);
+            }
+        }
         return recordHistory;
     }
 
     public static <T> SimulationResult average(Simulation simulation, int times, BiFunction<T, T, T> transformation) {
+        return average(simulation, times, RecordMerger.boxing(transformation));
+    }
+
+    public static SimulationResult average(Simulation simulation, int times, RecordMerger merger) {
         SimulationResult result = simulation.run();
         for (int i = 1; i < times; i++) {
-            result = result.average(simulation.run(), transformation);
+            result = result.average(simulation.run(), merger);
         }
         return result;
     }
 
-    private <T> SimulationResult average(SimulationResult other, BiFunction<T, T, T> transformation) {
-        Map<Object, List<RecordHistoryEntry>> newHistory = new HashMap<>();
-        Set<Object> thisKeys = recordHistory.keySet();
-        Set<Object> otherKeys = other.recordHistory.keySet();
-        Set<Object> equalKeys = new HashSet<>(thisKeys);
-        equalKeys.retainAll(otherKeys);
+    /** replications run in parallel on the common {@link ForkJoinPool} and are merged pairwise */
+    public static <T> SimulationResult average(Supplier<Simulation> simulationFactory, int times,
+                                               BiFunction<T, T, T> transformation) {
+        return average(simulationFactory, times, transformation, ForkJoinPool.commonPool());
+    }
 
-        for (Object key : equalKeys) {
-            newHistory.put(key, average(recordHistory.get(key), other.recordHistory.get(key), transformation));
-        }
+    public static <T> SimulationResult average(Supplier<Simulation> simulationFactory, int times,
+                                               BiFunction<T, T, T> transformation, ForkJoinPool pool) {
+        return average(replica -> simulationFactory.get(), times, RecordMerger.boxing(transformation), pool);
+    }
 
-        thisKeys.removeAll(equalKeys);
-        otherKeys.removeAll(equalKeys);
+    public static SimulationResult average(Supplier<Simulation> simulationFactory, int times, RecordMerger merger) {
+        return average(replica -> simulationFactory.get(), times, merger, ForkJoinPool.commonPool());
+    }
 
-        for (Object key : thisKeys) {
-            newHistory.put(key, recordHistory.get(key));
+    public static <T> SimulationResult average(IntFunction<Simulation> replicaFactory, int times,
+                                               BiFunction<T, T, T> transformation, ForkJoinPool pool) {
+        return average(replicaFactory, times, RecordMerger.boxing(transformation), pool);
+    }
+
+    public static SimulationResult average(IntFunction<Simulation> replicaFactory, int times,
+                                           RecordMerger merger, ForkJoinPool pool) {
+        if (times < 1) {
+            throw new IllegalArgumentException("times must be positive");
         }
-        for (Object key : otherKeys) {
-            newHistory.put(key, other.recordHistory.get(key));
+        return pool.invoke(new ReplicationTask(replicaFactory, 0, times, merger));
+    }
+
+    /** weighted by the replications each result stands for, so any tree of merges yields the mean */
+    private SimulationResult average(SimulationResult other, RecordMerger merger) {
+        Map<Object, Record> newRecords = new HashMap<>(other.records);
+        for (Record record : records.values()) {
+            Record otherRecord = other.records.get(record.getKey());
+            newRecords.put(record.getKey(),
+                    otherRecord == null ? record : record.merge(replicas, otherRecord, other.replicas, merger));
         }
+        return new SimulationResult(mean(duration, other.duration, other), newRecords,
+                mean(executedEntries, other.executedEntries, other),
+                mean(cancelledEntries, other.cancelledEntries, other), replicas + other.replicas);
+    }
 
-        return new SimulationResult((duration + other.duration) / 2, newHistory);
+    private long mean(long value, long otherValue, SimulationResult other) {
+        return RecordMerger.MEAN.merge(value, replicas, otherValue, other.replicas);
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> List<RecordHistoryEntry> average(List<RecordHistoryEntry> entries1, List<RecordHistoryEntry> entries2,
-                                                 BiFunction<T, T, T> transformation) {
-        if (entries1.isEmpty()) return entries2;
-        else if (entries2.isEmpty()) return entries1;
+    private static class ReplicationTask extends RecursiveTask<SimulationResult> {
 
-        List<RecordHistoryEntry> newEntries = new ArrayList<>();
+        private static final long serialVersionUID = 1L;
 
-        Iterator<RecordHistoryEntry> itEntries1 = entries1.iterator();
-        Iterator<RecordHistoryEntry> itEntries2 = entries2.iterator();
+        private final IntFunction<Simulation> replicaFactory;
+        private final int from, to;
+        private final RecordMerger merger;
 
-        RecordHistoryEntry currentEntry1 = itEntries1.next();
-        RecordHistoryEntry currentEntry2 = itEntries2.next();
+        private ReplicationTask(IntFunction<Simulation> replicaFactory, int from, int to, RecordMerger merger) {
+            this.replicaFactory = replicaFactory;
+            this.from = from;
+            this.to = to;
+            this.merger = merger;
+        }
 
-        while (itEntries1 != null && itEntries2 != null) {
-            T value = transformation.apply((T) currentEntry1.value, (T) currentEntry2.value);
-            boolean forward1 = false, forward2 = false;
-            if (currentEntry1.timestamp == currentEntry2.timestamp) {
-                newEntries.add(new RecordHistoryEntry(currentEntry1.timestamp, value));
-                forward1 = forward2 = true;
-            } else if (currentEntry1.timestamp < currentEntry2.timestamp) {
-                newEntries.add(new RecordHistoryEntry(currentEntry1.timestamp, value));
-                forward1 = true;
-            } else {
-                newEntries.add(new RecordHistoryEntry(currentEntry2.timestamp, value));
-                forward2 = true;
-            }
-            if (forward1) {
-                if (itEntries1.hasNext()) currentEntry1 = itEntries1.next();
-                else itEntries1 = null;
-            }
-            if (forward2) {
-                if (itEntries2.hasNext()) currentEntry2 = itEntries2.next();
-                else itEntries2 = null;
+        @Override
+        protected SimulationResult compute() {
+            if (to - from == 1) {
+                return replicaFactory.apply(from).run();
             }
+            int middle = (from + to) >>> 1;
+            ReplicationTask left = new ReplicationTask(replicaFactory, from, middle, merger);
+            ReplicationTask right = new ReplicationTask(replicaFactory, middle, to, merger);
+            right.fork();
+            SimulationResult leftResult = left.compute();
+            return leftResult.average(right.join(), merger);
         }
-        while (itEntries1 != null && itEntries1.hasNext()) newEntries.add(itEntries1.next());
-        while (itEntries2 != null && itEntries2.hasNext()) newEntries.add(itEntries2.next());
-        return newEntries;
     }
 }
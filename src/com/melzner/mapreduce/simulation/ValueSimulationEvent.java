@@ -2,7 +2,7 @@ package com.melzner.mapreduce.simulation;
 
 public class ValueSimulationEvent<T extends SimulationEventType, V> extends SimulationEvent<T> {
 
-    private final V value;
+    private V value;
 
     public ValueSimulationEvent(T type, V value) {
         super(type);
@@ -12,4 +12,12 @@ public class ValueSimulationEvent<T extends SimulationEventType, V> extends Simu
     public V getValue() {
         return value;
     }
+
+    /**
+     * Sets the value of an event obtained from a {@link SimulationEventPool}.
+     */
+    public ValueSimulationEvent<T, V> setValue(V value) {
+        this.value = value;
+        return this;
+    }
 }
@@ -0,0 +1,152 @@
+package com.melzner.mapreduce.simulation;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/** History of one record key in chunked primitive columns, only the latest chunk is kept while streaming to a sink. */
+public abstract class WritableRecord extends Record {
+
+    static final int CHUNK_SHIFT = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final Simulation.SimulationSession session;
+    private long[][] timestampChunks = new long[1][];
+
+    private RecordAggregation aggregation = RecordAggregation.NONE;
+    private long bucketWidth;
+    /** state of the last bucket: its start, the min or max of the values held so far and their time integral */
+    private long bucketStart;
+    private long integralStart;
+    private long lastChange;
+    private double bucketExtreme;
+    private double integral;
+
+    WritableRecord(Simulation.SimulationSession session, Object key) {
+        super(key);
+        this.session = session;
+    }
+
+    @Override
+    public long getTimestamp(int index) {
+        return timestampChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    void setAggregation(RecordAggregation aggregation, long bucketWidth) {
+        this.aggregation = aggregation;
+        this.bucketWidth = bucketWidth;
+    }
+
+    boolean isAggregated() {
+        return aggregation != RecordAggregation.NONE;
+    }
+
+    long currentTimestamp() {
+        return session.getTimestamp();
+    }
+
+    int entryIndex(long timestamp) {
+        if (size > 0 && getTimestamp(size - 1) == timestamp) {
+            return size - 1;
+        }
+        return newEntryIndex(timestamp);
+    }
+
+    int newEntryIndex(long timestamp) {
+        // the last entry is final once a different timestamp arrives, so a full chunk can be handed to the sink
+        if (size == CHUNK_SIZE && session != null && session.flushRecord(this)) {
+            size = 0;
+        }
+        int chunk = size >>> CHUNK_SHIFT;
+        if ((size & CHUNK_MASK) == 0 && (chunk == timestampChunks.length || timestampChunks[chunk] == null)) {
+            if (chunk == timestampChunks.length) {
+                timestampChunks = Arrays.copyOf(timestampChunks, chunk * 2);
+            }
+            timestampChunks[chunk] = new long[CHUNK_SIZE];
+            allocateValueChunk(chunk);
+        }
+        timestampChunks[chunk][size & CHUNK_MASK] = timestamp;
+        return size++;
+    }
+
+    abstract void allocateValueChunk(int chunk);
+
+    abstract void storeAggregate(int index, double value);
+
+    void aggregate(double previous, double value) {
+        long timestamp = currentTimestamp();
+        long bucket = timestamp - timestamp % bucketWidth;
+        int index;
+        if (size == 0 || bucket != bucketStart) {
+            if (size == 0) {
+                previous = value;
+                integralStart = timestamp;
+            } else {
+                long nextBucket = bucketStart + bucketWidth;
+                if (bucket > nextBucket && aggregation != RecordAggregation.LAST) {
+                    // the skipped buckets held the previous value the whole time
+                    storeAggregate(newEntryIndex(nextBucket), previous);
+                }
+                integralStart = bucket;
+            }
+            bucketStart = bucket;
+            lastChange = integralStart;
+            bucketExtreme = aggregation == RecordAggregation.MAX ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            integral = 0;
+            index = newEntryIndex(bucket);
+        } else {
+            index = size - 1;
+        }
+
+        // values replaced at the same timestamp were never held and don't count, like in a plain history
+        long held = timestamp - lastChange;
+        lastChange = timestamp;
+        switch (aggregation) {
+            case MIN:
+                if (held > 0) bucketExtreme = Math.min(bucketExtreme, previous);
+                storeAggregate(index, Math.min(bucketExtreme, value));
+                break;
+            case MAX:
+                if (held > 0) bucketExtreme = Math.max(bucketExtreme, previous);
+                storeAggregate(index, Math.max(bucketExtreme, value));
+                break;
+            case MEAN:
+                // the value holds until the next change, so the mean assumes it lasts to the end of the bucket
+                integral += previous * held;
+                long bucketEnd = bucketStart + bucketWidth;
+                storeAggregate(index, (integral + value * (bucketEnd - timestamp)) / (bucketEnd - integralStart));
+                break;
+            default:
+                storeAggregate(index, value);
+        }
+    }
+
+    abstract <T> void update(Function<T, T> transformation, T def);
+
+    abstract void appendMerged(long timestamp, Record record1, int index1, int weight1, Record record2, int index2,
+                               int weight2, RecordMerger merger);
+
+    abstract void appendCopy(long timestamp, Record source, int index);
+
+    static WritableRecord create(Simulation.SimulationSession session, Object key, Object def) {
+        if (def instanceof Integer) {
+            return new IntRecord(session, key);
+        } else if (def instanceof Long) {
+            return new LongRecord(session, key);
+        } else if (def instanceof Double) {
+            return new DoubleRecord(session, key);
+        }
+        throw new UnsupportedOperationException("cannot record values of " + (def == null ? null : def.getClass()));
+    }
+
+    static WritableRecord create(Object key, byte type) {
+        switch (type) {
+            case RecordFile.INT:
+                return new IntRecord(null, key);
+            case RecordFile.LONG:
+                return new LongRecord(null, key);
+            default:
+                return new DoubleRecord(null, key);
+        }
+    }
+}
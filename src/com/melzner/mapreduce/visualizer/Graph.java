@@ -1,5 +1,7 @@
 package com.melzner.mapreduce.visualizer;
 
+import com.melzner.mapreduce.simulation.Record;
+
 import java.util.*;
 import java.util.function.Function;
 
@@ -38,6 +40,20 @@ public class Graph {
         return new Graph(points);
     }
 
+    /**
+     * Creates a graph from the primitive columns of a record, x is the timestamp and y the value.
+     */
+    public static Graph create(Record record) {
+        if (record == null || record.size() == 0) {
+            return new Graph(new double[][]{{0, 0}, {0, 0}});
+        }
+        double[][] points = new double[record.size()][];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new double[]{record.getTimestamp(i), record.getDouble(i)};
+        }
+        return new Graph(points);
+    }
+
     public Graph add(Graph other) {
         List<double[]> points = new ArrayList<>();
 
@@ -2,15 +2,15 @@ package com.melzner.xmlutil;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 public class XMLValue<T> {
 
-    private static final Random random = new Random();
     final Function<String, T> customTransformation;
     private final XMLElement parent;
-    private final List<Function<T, T>> getTransformations = new ArrayList<>();
+    private final List<BiFunction<T, SplittableRandom, T>> getTransformations = new ArrayList<>();
     private T value;
     private String name;
 
@@ -33,10 +33,18 @@ public class XMLValue<T> {
         return this;
     }
 
+    /** @throws IllegalStateException if the value is randomized, see {@link #get(SplittableRandom)} */
     public T get() {
+        if (! getTransformations.isEmpty()) {
+            throw new IllegalStateException(this + " is randomized, it needs a random stream");
+        }
+        return value;
+    }
+
+    public T get(SplittableRandom random) {
         T value = this.value;
-        for (Function<T, T> getTransformation : getTransformations) {
-            value = getTransformation.apply(value);
+        for (BiFunction<T, SplittableRandom, T> getTransformation : getTransformations) {
+            value = getTransformation.apply(value, random);
         }
         return value;
     }
@@ -61,20 +69,30 @@ public class XMLValue<T> {
 
     @SuppressWarnings("unchecked")
     public void applyRandom(double rMin, double rMax) {
-        gaussianBetween(rMin, rMax);
         if (value instanceof Integer) {
-            getTransformations.add(t -> (T) (Integer) ((Double) ((Integer) t * gaussianBetween(rMin, rMax))).intValue());
+            getTransformations.add((t, r) -> (T) (Integer) ((Double) ((Integer) t * gaussianBetween(r, rMin, rMax))).intValue());
         } else if (value instanceof Double) {
-            getTransformations.add(t -> (T) (Double) ((Double) t * gaussianBetween(rMin, rMax)));
+            getTransformations.add((t, r) -> (T) (Double) ((Double) t * gaussianBetween(r, rMin, rMax)));
         } else if (value instanceof Long) {
-            getTransformations.add(t -> (T) (Long) ((Double) ((Long) t * gaussianBetween(rMin, rMax))).longValue());
+            getTransformations.add((t, r) -> (T) (Long) ((Double) ((Long) t * gaussianBetween(r, rMin, rMax))).longValue());
         } else {
             throw new UnsupportedOperationException("cannot apply random to value of " + value.getClass());
         }
     }
 
-    public static double gaussianBetween(double min, double max) {
-        double d = Math.max(Math.min(1.0, (random.nextGaussian() / 4 + 0.5)), 0.0);
+    public static double gaussianBetween(SplittableRandom random, double min, double max) {
+        double d = Math.max(Math.min(1.0, (nextGaussian(random) / 4 + 0.5)), 0.0);
         return min + d * (max - min);
     }
+
+    /** standard normal sample using the polar method, SplittableRandom has no own gaussian before Java 17 */
+    public static double nextGaussian(SplittableRandom random) {
+        double v1, v2, s;
+        do {
+            v1 = 2 * random.nextDouble() - 1;
+            v2 = 2 * random.nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        return v1 * Math.sqrt(- 2 * Math.log(s) / s);
+    }
 }